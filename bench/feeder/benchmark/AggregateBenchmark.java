@@ -0,0 +1,62 @@
+package feeder.benchmark;
+
+import feeder.model.Category;
+import feeder.model.Channel;
+
+/**
+ * <b>AggregateBenchmark</b> measures {@link Category#getAggregatedFeed()} of Categories
+ * with 1 to 1,000 fresh Channels of 100 entries each - once with the merge done on every call
+ * (as after a Channel changed) and once answered from the cached aggregated feed.
+ * <p>
+ * Run from the project root:
+ * <pre>
+ * javac -encoding UTF-8 -cp "lib/*" -d out $(find src bench -name '*.java')
+ * java -cp "out:lib/*" feeder.benchmark.AggregateBenchmark
+ * </pre>
+ *
+ * @version	1.0
+ */
+public class AggregateBenchmark {
+	private static final int[] CHANNELS = { 1, 10, 100, 1000 };
+	private static final int ENTRIES = 100;
+
+	/**
+	 * @param args Not used.
+	 * @throws Exception Thrown when a fixture can't be served or fetched.
+	 */
+	public static void main(String[] args) throws Exception {
+		Harness.printHeader();
+		run();
+	}
+
+	static void run() throws Exception {
+		Fixtures fixtures = new Fixtures();
+		try {
+			for (int size : CHANNELS) {
+				final Category category = new Category("Benchmark");
+				for (int i = 0; i < size; i++) {
+					Channel channel = new Channel("Channel " + i, fixtures.publish("/channel-" + i + ".xml", Fixtures.generateRss(i, ENTRIES)));
+					// fresh for the whole run - only the merge is measured, not the network
+					channel.setMaxAge(Long.MAX_VALUE);
+					category.addChannel(channel);
+				}
+
+				Harness.measure("getAggregatedFeed", size, new Harness.Operation() {
+					public Object run() throws Exception {
+						// renaming invalidates the cached feed, like a refreshed Channel does
+						category.setName(category.getName());
+						return category.getAggregatedFeed().getCurrentContent();
+					}
+				});
+				Harness.measure("getAggregatedFeed/hit", size, new Harness.Operation() {
+					public Object run() throws Exception {
+						return category.getAggregatedFeed().getCurrentContent();
+					}
+				});
+			}
+		}
+		finally {
+			fixtures.stop();
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package feeder.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * <b>BenchmarkSuite</b> runs all the hot paths one after another: fetching a Channel,
+ * aggregating a Category, rendering news and loading data.dat, see {@link FetchBenchmark},
+ * {@link AggregateBenchmark}, {@link RenderBenchmark} and {@link LoadBenchmark}.
+ * The results can be saved and compared with the results of the previous release -
+ * a benchmark which got more than 10% slower or allocates more than 10% more is reported
+ * and the suite ends with exit code 1.
+ * <p>
+ * Run from the project root:
+ * <pre>
+ * javac -encoding UTF-8 -cp "lib/*" -d out $(find src bench -name '*.java')
+ * java -Xmx2g -cp "out:lib/*" feeder.benchmark.BenchmarkSuite [-save results.csv] [-baseline old.csv] [fetch|aggregate|render|load ...]
+ * </pre>
+ *
+ * @version	1.0
+ */
+public class BenchmarkSuite {
+	private static final double TOLERANCE = 0.10;
+
+	/**
+	 * @param args Files to save the results to and compare them with, names of the benchmarks to run (all by default).
+	 * @throws Exception Thrown when a benchmark fails.
+	 */
+	public static void main(String[] args) throws Exception {
+		File save = null;
+		File baseline = null;
+		StringBuilder selected = new StringBuilder();
+		for (int i = 0; i < args.length; i++) {
+			if ("-save".equals(args[i]) && i + 1 < args.length) {
+				save = new File(args[++i]);
+			}
+			else if ("-baseline".equals(args[i]) && i + 1 < args.length) {
+				baseline = new File(args[++i]);
+			}
+			else {
+				selected.append(' ').append(args[i]).append(' ');
+			}
+		}
+		String benchmarks = selected.length() > 0 ? selected.toString() : " fetch aggregate render load ";
+
+		System.out.printf("%s %s, %d CPU, max heap %d MB%n", System.getProperty("java.vm.name"), System.getProperty("java.version"),
+				Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().maxMemory() / 1048576);
+		Harness.printHeader();
+		if (benchmarks.contains(" fetch ")) FetchBenchmark.run();
+		if (benchmarks.contains(" aggregate ")) AggregateBenchmark.run();
+		if (benchmarks.contains(" render ")) RenderBenchmark.run();
+		if (benchmarks.contains(" load ")) LoadBenchmark.run();
+
+		List<Harness.Result> results = Harness.getResults();
+		if (save != null) {
+			write(results, save);
+		}
+		if (baseline != null && compare(results, read(baseline)) > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Prints the benchmarks which got worse than the baseline.
+	 *
+	 * @return Number of regressions.
+	 */
+	private static int compare(List<Harness.Result> results, Map<String, Harness.Result> baseline) {
+		int regressions = 0;
+		System.out.println();
+		for (Harness.Result result : results) {
+			Harness.Result old = baseline.get(result.key());
+			if (old == null) continue;
+
+			double speed = result.operationsPerSecond / old.operationsPerSecond - 1;
+			double allocation = old.bytesPerOperation > 0 ? result.bytesPerOperation / old.bytesPerOperation - 1 : 0;
+			if (speed < -TOLERANCE || allocation > TOLERANCE) {
+				regressions++;
+				System.out.printf("REGRESSION %-22s %10s   ops/s %+6.1f%%   alloc/op %+6.1f%%%n", result.benchmark, result.parameter,
+						speed * 100, allocation * 100);
+			}
+		}
+		System.out.println(regressions == 0 ? "No regressions." : regressions + " regression(s).");
+		return regressions;
+	}
+
+	private static void write(List<Harness.Result> results, File file) throws IOException {
+		PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+		try {
+			writer.println("benchmark,param,ops/s,bytes/op");
+			for (Harness.Result result : results) {
+				writer.printf(Locale.ROOT, "%s,%s,%.3f,%.0f%n", result.benchmark, result.parameter, result.operationsPerSecond,
+						result.bytesPerOperation);
+			}
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	private static Map<String, Harness.Result> read(File file) throws IOException {
+		Map<String, Harness.Result> results = new HashMap<String, Harness.Result>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		try {
+			reader.readLine(); // header
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(",");
+				if (fields.length != 4) continue;
+				Harness.Result result = new Harness.Result(fields[0], fields[1], Double.parseDouble(fields[2]), Double.parseDouble(fields[3]));
+				results.put(result.key(), result);
+			}
+		}
+		finally {
+			reader.close();
+		}
+		return results;
+	}
+}
@@ -0,0 +1,48 @@
+package feeder.benchmark;
+
+import feeder.model.Channel;
+
+/**
+ * <b>FetchBenchmark</b> measures {@link Channel#getChannelContent()} of a stale Channel:
+ * downloading the feed from the local server, parsing it and building the List of News,
+ * for feeds of 10 to 100k entries.
+ * <p>
+ * Run from the project root:
+ * <pre>
+ * javac -encoding UTF-8 -cp "lib/*" -d out $(find src bench -name '*.java')
+ * java -cp "out:lib/*" feeder.benchmark.FetchBenchmark
+ * </pre>
+ *
+ * @version	1.0
+ */
+public class FetchBenchmark {
+	private static final int[] SIZES = { 10, 100, 1000, 10000, 100000 };
+
+	/**
+	 * @param args Not used.
+	 * @throws Exception Thrown when a fixture can't be served or fetched.
+	 */
+	public static void main(String[] args) throws Exception {
+		Harness.printHeader();
+		run();
+	}
+
+	static void run() throws Exception {
+		Fixtures fixtures = new Fixtures();
+		try {
+			for (int size : SIZES) {
+				final Channel channel = new Channel("Benchmark", fixtures.publish("/feed-" + size + ".xml", Fixtures.generateRss(0, size)));
+				// never fresh - every call fetches
+				channel.setMaxAge(0);
+				Harness.measure("getChannelContent", size, new Harness.Operation() {
+					public Object run() throws Exception {
+						return channel.getChannelContent();
+					}
+				});
+			}
+		}
+		finally {
+			fixtures.stop();
+		}
+	}
+}
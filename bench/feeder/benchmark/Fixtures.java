@@ -0,0 +1,124 @@
+package feeder.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * <b>Fixtures</b> generates feeds for the benchmarks and serves them from a local HTTP server,
+ * so Channels are fetched the same way as in the application, without depending on the network.
+ * The server sends no validators, so every request downloads and parses the whole feed.
+ *
+ * @version	1.0
+ */
+final class Fixtures {
+	/** Name of the threads of the server, they are left out of the allocation counts. */
+	static final String SERVER_THREAD = "fixture-server";
+	private static final DateTimeFormatter RFC_1123 = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+	private static final long NEWEST = 1466942400000L; // 2016-06-26 12:00 UTC
+
+	static {
+		// like any real server, otherwise small feeds wait for the delayed ACK and measure nothing but that
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Map<String, byte[]> documents = new ConcurrentHashMap<String, byte[]>();
+
+	/**
+	 * Starts the server on a free port of the loopback interface.
+	 *
+	 * @throws IOException Thrown when the server can't be started.
+	 */
+	Fixtures() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 64);
+		executor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, SERVER_THREAD);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] document = documents.get(exchange.getRequestURI().getPath());
+				if (document == null) {
+					exchange.sendResponseHeaders(404, -1);
+				}
+				else {
+					exchange.getResponseHeaders().set("Content-Type", "application/rss+xml; charset=utf-8");
+					exchange.sendResponseHeaders(200, document.length);
+					OutputStream output = exchange.getResponseBody();
+					output.write(document);
+					output.close();
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+	}
+
+	/**
+	 * Publishes the document.
+	 *
+	 * @param path Path of the document, starting with a slash.
+	 * @param document The document.
+	 * @return URL of the document.
+	 */
+	String publish(String path, byte[] document) {
+		documents.put(path, document);
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + path;
+	}
+
+	void stop() {
+		server.stop(0);
+		executor.shutdown();
+	}
+
+	/**
+	 * Generates an RSS 2.0 feed like a news site publishes: a news a minute, newest first,
+	 * with HTML descriptions. GUIDs and links include the channel number, so feeds of different
+	 * Channels don't share stories (which would be deduplicated when aggregating).
+	 *
+	 * @param channel Number of the Channel, also shifts the dates a little.
+	 * @param size Number of entries.
+	 * @return The feed.
+	 */
+	static byte[] generateRss(int channel, int size) {
+		StringBuilder xml = new StringBuilder(size * 560 + 300);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+			.append("<rss version=\"2.0\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\">\n")
+			.append("<channel><title>Channel ").append(channel).append("</title><link>http://example.com/").append(channel)
+			.append("/</link><description>Generated feed</description><ttl>15</ttl>\n");
+		for (int i = 0; i < size; i++) {
+			xml.append("<item><title>Headline number ").append(i).append(" &amp; something</title>")
+				.append("<link>http://example.com/").append(channel).append("/news/").append(i).append("</link>")
+				.append("<guid isPermaLink=\"false\">urn:news:").append(channel).append(':').append(i).append("</guid>")
+				.append("<description><![CDATA[<p>Lorem ipsum dolor sit amet, <b>consectetur</b> adipiscing elit, sed do eiusmod tempor ")
+				.append("incididunt ut labore et dolore magna aliqua.</p>]]></description>")
+				.append("<pubDate>").append(RFC_1123.format(Instant.ofEpochMilli(NEWEST - i * 60000L - channel * 1000L))).append("</pubDate>")
+				.append("<dc:creator>Reporter</dc:creator>")
+				.append("</item>\n");
+		}
+		xml.append("</channel></rss>");
+		return xml.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
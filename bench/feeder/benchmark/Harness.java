@@ -0,0 +1,148 @@
+package feeder.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <b>Harness</b> runs an operation repeatedly and reports what the suite compares between versions:
+ * throughput, time per operation, bytes allocated per operation and per second, and how many
+ * garbage collections that caused. Each operation is warmed up for a second first, so the JIT
+ * has compiled it, and then measured for at least two seconds and three operations.
+ * <p>
+ * Allocations are counted on all threads (except the one serving the fixtures), because
+ * Categories refresh their Channels on a pool of threads.
+ *
+ * @version	1.0
+ */
+final class Harness {
+	private static final long WARMUP_TIME = TimeUnit.SECONDS.toNanos(1);
+	private static final long MEASUREMENT_TIME = TimeUnit.SECONDS.toNanos(2);
+	private static final int MIN_OPERATIONS = 3;
+	private static final String HEADER_FORMAT = "%-22s %10s %12s %12s %14s %12s %8s %8s%n";
+	private static final String ROW_FORMAT = "%-22s %10s %12.2f %12.3f %14.3f %12.1f %8d %8d%n";
+	private static final List<Result> RESULTS = new ArrayList<Result>();
+	// results are added up here, so the JIT can't drop an operation whose result isn't used
+	static volatile long sink;
+
+	private Harness() {
+	}
+
+	/**
+	 * Operation to measure, its result is consumed by the Harness.
+	 */
+	interface Operation {
+		Object run() throws Exception;
+	}
+
+	/**
+	 * Measurement of one operation with one parameter.
+	 */
+	static final class Result {
+		final String benchmark;
+		final String parameter;
+		final double operationsPerSecond;
+		final double bytesPerOperation;
+
+		Result(String benchmark, String parameter, double operationsPerSecond, double bytesPerOperation) {
+			this.benchmark = benchmark;
+			this.parameter = parameter;
+			this.operationsPerSecond = operationsPerSecond;
+			this.bytesPerOperation = bytesPerOperation;
+		}
+
+		String key() {
+			return benchmark + " " + parameter;
+		}
+	}
+
+	static void printHeader() {
+		System.out.printf(HEADER_FORMAT, "benchmark", "param", "ops/s", "ms/op", "alloc MB/op", "alloc MB/s", "gc", "gc ms");
+	}
+
+	/**
+	 * Warms the operation up, measures it and prints a row of the table.
+	 *
+	 * @param benchmark Name of the benchmark.
+	 * @param parameter Size the operation works on.
+	 * @param operation Operation to measure.
+	 * @return The measurement.
+	 * @throws Exception Thrown by the operation.
+	 */
+	static Result measure(String benchmark, Object parameter, Operation operation) throws Exception {
+		run(operation, WARMUP_TIME, 1);
+		System.gc();
+
+		long startGcCount = gcCount();
+		long startGcTime = gcTime();
+		long startBytes = allocatedBytes();
+		long startTime = System.nanoTime();
+		int operations = run(operation, MEASUREMENT_TIME, MIN_OPERATIONS);
+		long time = System.nanoTime() - startTime;
+		long bytes = allocatedBytes() - startBytes;
+		long gcCount = gcCount() - startGcCount;
+		long gcTime = gcTime() - startGcTime;
+
+		Result result = new Result(benchmark, String.valueOf(parameter), operations * 1e9 / time, (double) bytes / operations);
+		System.out.printf(ROW_FORMAT, result.benchmark, result.parameter, result.operationsPerSecond, time / 1e6 / operations,
+				result.bytesPerOperation / 1048576.0, bytes / 1048576.0 / (time / 1e9), gcCount, gcTime);
+		synchronized (RESULTS) {
+			RESULTS.add(result);
+		}
+		return result;
+	}
+
+	/**
+	 * @return All measurements so far, in order.
+	 */
+	static List<Result> getResults() {
+		synchronized (RESULTS) {
+			return Collections.unmodifiableList(new ArrayList<Result>(RESULTS));
+		}
+	}
+
+	private static int run(Operation operation, long minTime, int minOperations) throws Exception {
+		long start = System.nanoTime();
+		int operations = 0;
+		while (operations < minOperations || System.nanoTime() - start < minTime) {
+			sink += System.identityHashCode(operation.run());
+			operations++;
+		}
+		return operations;
+	}
+
+	private static long allocatedBytes() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long[] ids = threads.getAllThreadIds();
+		ThreadInfo[] infos = threads.getThreadInfo(ids);
+		long[] bytes = threads.getThreadAllocatedBytes(ids);
+		long total = 0;
+		for (int i = 0; i < ids.length; i++) {
+			// the server stands in for the network, its allocations aren't ours
+			if (infos[i] != null && bytes[i] > 0 && !infos[i].getThreadName().startsWith(Fixtures.SERVER_THREAD)) {
+				total += bytes[i];
+			}
+		}
+		return total;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			count += Math.max(0, collector.getCollectionCount());
+		}
+		return count;
+	}
+
+	private static long gcTime() {
+		long time = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += Math.max(0, collector.getCollectionTime());
+		}
+		return time;
+	}
+}
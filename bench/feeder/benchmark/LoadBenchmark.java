@@ -0,0 +1,77 @@
+package feeder.benchmark;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import feeder.model.Channel;
+import feeder.model.Model;
+import feeder.model.ModelStore;
+
+/**
+ * <b>LoadBenchmark</b> measures the start of the application: loading data.dat with
+ * {@link ModelStore#load(java.io.File, java.io.File)} and the cached entries with
+ * {@link ModelStore#loadEntries(Model, java.io.File)}, for 1 to 1,000 Channels
+ * of 100 entries each, in 10 Categories.
+ * <p>
+ * Run from the project root:
+ * <pre>
+ * javac -encoding UTF-8 -cp "lib/*" -d out $(find src bench -name '*.java')
+ * java -cp "out:lib/*" feeder.benchmark.LoadBenchmark
+ * </pre>
+ *
+ * @version	1.0
+ */
+public class LoadBenchmark {
+	private static final int[] CHANNELS = { 1, 10, 100, 1000 };
+	private static final int CATEGORIES = 10;
+	private static final int ENTRIES = 100;
+
+	/**
+	 * @param args Not used.
+	 * @throws Exception Thrown when a fixture can't be served, fetched or saved.
+	 */
+	public static void main(String[] args) throws Exception {
+		Harness.printHeader();
+		run();
+	}
+
+	static void run() throws Exception {
+		Fixtures fixtures = new Fixtures();
+		File directory = Files.createTempDirectory("feeder-benchmark").toFile();
+		try {
+			for (int size : CHANNELS) {
+				Model model = new Model();
+				for (int i = 0; i < CATEGORIES; i++) {
+					model.addNewCategory("Category " + i);
+				}
+				for (int i = 0; i < size; i++) {
+					Channel channel = new Channel("Channel " + i, fixtures.publish("/channel-" + i + ".xml", Fixtures.generateRss(i, ENTRIES)));
+					model.addChannel(channel, "Category " + (i % CATEGORIES));
+				}
+
+				final File dataFile = new File(directory, size + "-" + ModelStore.DATA_FILE);
+				final File entriesFile = new File(directory, size + "-" + ModelStore.ENTRIES_FILE);
+				ModelStore.save(model, dataFile, entriesFile);
+
+				Harness.measure("load", size, new Harness.Operation() {
+					public Object run() throws Exception {
+						return ModelStore.load(dataFile, entriesFile);
+					}
+				});
+				Harness.measure("load+entries", size, new Harness.Operation() {
+					public Object run() throws Exception {
+						Model loaded = ModelStore.load(dataFile, entriesFile);
+						ModelStore.loadEntries(loaded, entriesFile);
+						return loaded;
+					}
+				});
+				dataFile.delete();
+				entriesFile.delete();
+			}
+		}
+		finally {
+			directory.delete();
+			fixtures.stop();
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package feeder.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+
+import com.rometools.rome.feed.synd.SyndFeed;
+import com.rometools.rome.feed.synd.SyndFeedImpl;
+import com.rometools.rome.io.WireFeedInput;
+import com.rometools.rome.io.XmlReader;
+
+import feeder.model.StreamingFeedParser;
+
+/**
+ * <b>ParseBenchmark</b> compares ROME (JDOM) with the StAX parser on generated
+ * RSS 2.0 and Atom feeds of 1k and 10k entries: parsing time, bytes allocated
+ * and peak heap during a single parse. Both parsers end with the SyndFeed used by Channel.
+ * <p>
+ * Run from the project root:
+ * <pre>
+ * javac -encoding UTF-8 -cp "lib/*" -d out $(find src bench -name '*.java')
+ * java -cp "out:lib/*" feeder.benchmark.ParseBenchmark
+ * </pre>
+ *
+ * @version	1.0
+ */
+public class ParseBenchmark {
+	private static final int[] SIZES = { 1000, 10000 };
+	private static final int WARMUP = 5;
+	private static final int RUNS = 10;
+
+	private interface Parser {
+		SyndFeed parse(byte[] document) throws Exception;
+	}
+
+	/**
+	 * @param args Not used.
+	 * @throws Exception Thrown when a generated feed can't be parsed.
+	 */
+	public static void main(String[] args) throws Exception {
+		Parser rome = new Parser() {
+			public SyndFeed parse(byte[] document) throws Exception {
+				return new SyndFeedImpl(new WireFeedInput().build(new XmlReader(new ByteArrayInputStream(document), true)), false);
+			}
+		};
+		Parser stax = new Parser() {
+			public SyndFeed parse(byte[] document) throws Exception {
+				return new SyndFeedImpl(StreamingFeedParser.parse(new ByteArrayInputStream(document), null), false);
+			}
+		};
+
+		System.out.printf("%-6s %-6s %8s %10s %12s %18s %14s%n", "format", "parser", "entries", "size MB", "ms/feed", "allocated MB/feed", "peak heap MB");
+		for (int size : SIZES) {
+			byte[] rss = generateRss(size);
+			byte[] atom = generateAtom(size);
+			measure("rss", "rome", rss, size, rome);
+			measure("rss", "stax", rss, size, stax);
+			measure("atom", "rome", atom, size, rome);
+			measure("atom", "stax", atom, size, stax);
+		}
+	}
+
+	private static void measure(String format, String name, byte[] document, int size, Parser parser) throws Exception {
+		long checksum = 0;
+		for (int i = 0; i < WARMUP; i++) {
+			checksum += parser.parse(document).getEntries().size();
+		}
+
+		long startBytes = allocatedBytes();
+		long startTime = System.nanoTime();
+		for (int i = 0; i < RUNS; i++) {
+			checksum += parser.parse(document).getEntries().size();
+		}
+		long time = System.nanoTime() - startTime;
+		long bytes = allocatedBytes() - startBytes;
+
+		// peak of a single parse, starting from a clean heap
+		System.gc();
+		long baseline = resetPeakHeap();
+		checksum += parser.parse(document).getEntries().size();
+		long peak = peakHeap() - baseline;
+
+		System.out.printf("%-6s %-6s %8d %10.2f %12.2f %18.2f %14.2f%s%n", format, name, size, document.length / 1048576.0,
+				time / 1e6 / RUNS, bytes / 1048576.0 / RUNS, peak / 1048576.0,
+				checksum != (long) size * (WARMUP + RUNS + 1) ? " (wrong entry count)" : "");
+	}
+
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static long resetPeakHeap() {
+		long used = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+				used += pool.getUsage().getUsed();
+			}
+		}
+		return used;
+	}
+
+	private static long peakHeap() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	private static byte[] generateRss(int size) {
+		StringBuilder xml = new StringBuilder(size * 600);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+			.append("<rss version=\"2.0\" xmlns:dc=\"http://purl.org/dc/elements/1.1/\" xmlns:media=\"http://search.yahoo.com/mrss/\">\n")
+			.append("<channel><title>Benchmark</title><link>http://example.com/</link>")
+			.append("<description>Generated feed</description><ttl>15</ttl>\n");
+		for (int i = 0; i < size; i++) {
+			xml.append("<item><title>Headline number ").append(i).append(" &amp; something</title>")
+				.append("<link>http://example.com/news/").append(i).append("</link>")
+				.append("<guid isPermaLink=\"false\">urn:news:").append(i).append("</guid>")
+				.append("<description><![CDATA[<p>Lorem ipsum dolor sit amet, <b>consectetur</b> adipiscing elit, sed do eiusmod tempor ")
+				.append("incididunt ut labore et dolore magna aliqua.</p>]]></description>")
+				.append("<pubDate>Tue, 14 Jun 2016 12:").append(String.format("%02d", i % 60)).append(":00 GMT</pubDate>")
+				.append("<category>World</category><dc:creator>Reporter</dc:creator>")
+				.append("<media:thumbnail width=\"66\" height=\"49\" url=\"http://example.com/img/").append(i).append(".jpg\"/>")
+				.append("</item>\n");
+		}
+		xml.append("</channel></rss>");
+		return xml.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static byte[] generateAtom(int size) {
+		StringBuilder xml = new StringBuilder(size * 600);
+		xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+			.append("<feed xmlns=\"http://www.w3.org/2005/Atom\"><title>Benchmark</title>")
+			.append("<link href=\"http://example.com/\"/><id>urn:benchmark</id><updated>2016-06-14T12:00:00Z</updated>\n");
+		for (int i = 0; i < size; i++) {
+			xml.append("<entry><title>Headline number ").append(i).append(" &amp; something</title>")
+				.append("<link href=\"http://example.com/news/").append(i).append("\"/>")
+				.append("<id>urn:news:").append(i).append("</id>")
+				.append("<updated>2016-06-14T12:").append(String.format("%02d", i % 60)).append(":00Z</updated>")
+				.append("<published>2016-06-14T12:").append(String.format("%02d", i % 60)).append(":00Z</published>")
+				.append("<author><name>Reporter</name></author><category term=\"World\"/>")
+				.append("<summary type=\"html\">&lt;p&gt;Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor ")
+				.append("incididunt ut labore et dolore magna aliqua.&lt;/p&gt;</summary>")
+				.append("</entry>\n");
+		}
+		xml.append("</feed>");
+		return xml.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,123 @@
+package feeder.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import feeder.controller.HtmlRenderer;
+import feeder.model.News;
+
+/**
+ * <b>RenderBenchmark</b> measures how long it takes to format a page of News
+ * and how many bytes are allocated on the way, for 1k, 10k and 100k entries.
+ * The old String concatenation is measured too (only for smaller pages, it's quadratic).
+ * As part of {@link BenchmarkSuite} only the renderer behind
+ * {@code Controller.convertNewsToHTML()} is measured, from 10 to 100k entries.
+ * <p>
+ * Run from the project root:
+ * <pre>
+ * javac -encoding UTF-8 -cp "lib/*" -d out $(find src bench -name '*.java')
+ * java -cp "out:lib/*" feeder.benchmark.RenderBenchmark
+ * </pre>
+ * 
+ * @version	1.0
+ */
+public class RenderBenchmark {
+	private static final int[] SIZES = { 1000, 10000, 100000 };
+	private static final int[] SUITE_SIZES = { 10, 100, 1000, 10000, 100000 };
+	private static final int CONCAT_LIMIT = 1000;
+	private static final int WARMUP = 5;
+	private static final int RUNS = 10;
+
+	private interface Renderer {
+		String render(List<News> content);
+	}
+
+	/**
+	 * @param args Not used.
+	 */
+	public static void main(String[] args) {
+		System.out.printf("%-10s %10s %14s %18s%n", "renderer", "entries", "ms/page", "allocated MB/page");
+		for (int size : SIZES) {
+			List<News> content = generate(size);
+			measure("buffer", content, new Renderer() {
+				public String render(List<News> content) {
+					return HtmlRenderer.render("Benchmark", content, true);
+				}
+			});
+			if (size <= CONCAT_LIMIT) {
+				measure("concat", content, new Renderer() {
+					public String render(List<News> content) {
+						return concatenate("Benchmark", content);
+					}
+				});
+			}
+		}
+	}
+
+	static void run() throws Exception {
+		for (int size : SUITE_SIZES) {
+			final List<News> content = generate(size);
+			Harness.measure("convertNewsToHTML", size, new Harness.Operation() {
+				public Object run() {
+					// Controller only delegates here, and creating it would open the window
+					return HtmlRenderer.render("Benchmark", content, true);
+				}
+			});
+		}
+	}
+
+	private static void measure(String name, List<News> content, Renderer renderer) {
+		long checksum = 0;
+		for (int i = 0; i < WARMUP; i++) {
+			checksum += renderer.render(content).length();
+		}
+
+		long startBytes = allocatedBytes();
+		long startTime = System.nanoTime();
+		for (int i = 0; i < RUNS; i++) {
+			checksum += renderer.render(content).length();
+		}
+		long time = System.nanoTime() - startTime;
+		long bytes = allocatedBytes() - startBytes;
+
+		System.out.printf("%-10s %10d %14.2f %18.2f%s%n", name, content.size(), time / 1e6 / RUNS,
+				bytes / 1048576.0 / RUNS, checksum == 0 ? " (empty)" : "");
+	}
+
+	private static long allocatedBytes() {
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+				.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/**
+	 * The way pages were built before HtmlRenderer, kept for comparison.
+	 */
+	private static String concatenate(String title, List<News> content) {
+		String html = "<html><h2 style='font-family: Tahoma'>" + title + "</h2>";
+		for(News news : content) {
+			html += "<div style='font-family: Tahoma; font-size:13px; margin-bottom: 10px'>";
+			html += "<a style='font-weight: bold;' href='" + news.getLink() + "'>" + news.getTitle() + "</a>";
+			html += " (" + news.getDate() + ")<br>";
+			html += "Z kanału: " + news.getChannel() + "<br>";
+			html += news.getDescription() + "</div><hr>";
+		}
+		return html;
+	}
+
+	private static List<News> generate(int size) {
+		List<News> content = new ArrayList<News>(size);
+		for (int i = 0; i < size; i++) {
+			News news = new News();
+			news.setTitle("Headline number " + i + " & something <important>");
+			news.setLink("http://example.com/news/" + i + "?source=rss&id=" + i);
+			news.setPublishedTime(1465905600000L - i * 60000L);
+			news.setChannel("Channel " + (i % 50));
+			news.setDescription("Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor "
+					+ "incididunt ut labore et dolore magna aliqua. Ut enim ad minim veniam, quis nostrud "
+					+ "exercitation ullamco laboris nisi ut aliquip ex ea commodo consequat.");
+			content.add(news);
+		}
+		return content;
+	}
+}
@@ -6,6 +6,7 @@ import feeder.views.View;
 /**
  * <b>Feeder</b> is a simple RSS reader written in Java using Swing GUI widget toolkit.
  * This is a main class of the application. Initializes the View and Controller.
+ * Servers without a display run {@link FeederDaemon} instead.
  * 
  * @author	Paweł Dąbrowski
  * @version	1.0
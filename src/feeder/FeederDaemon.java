@@ -0,0 +1,315 @@
+package feeder;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import feeder.controller.FeedServer;
+import feeder.model.Category;
+import feeder.model.Channel;
+import feeder.model.FeedCache;
+import feeder.model.FeedWriter;
+import feeder.model.MetricsRegistry;
+import feeder.model.Model;
+import feeder.model.ModelJournal;
+import feeder.model.ModelListener;
+import feeder.model.ModelStore;
+import feeder.model.News;
+import feeder.model.NewsMerger;
+import feeder.model.RefreshScheduler;
+
+/**
+ * <b>FeederDaemon</b> runs Feeder without any window, e.g. on a server. It loads the same
+ * subscriptions and cached entries as the application, keeps refreshing all the Channels
+ * in the background and writes the aggregated feed of every Category (and of all of them
+ * together) as RSS files, which can be served by any web server. Given a port, it also
+ * serves all the feeds itself, see {@link FeedServer}. Metrics of the Channels are exposed
+ * through JMX, see {@link MetricsRegistry}. Swing isn't used at all,
+ * so it runs with a small heap and without a display:
+ * <pre>
+ * java -Xmx64m -cp "bin:lib/*" feeder.FeederDaemon [output directory] [port]
+ * </pre>
+ *
+ * @version	1.0
+ */
+public class FeederDaemon implements ModelListener {
+	/** Directory of the output files if none is given. */
+	public static final String DEFAULT_OUTPUT_DIRECTORY = "output";
+	/** File with all the Categories together. */
+	public static final String ALL_FILE = "all.xml";
+	// changes are collected for a while, so a refreshing Category is written once, not after every Channel
+	private static final long OUTPUT_INTERVAL = TimeUnit.SECONDS.toMillis(30);
+	// a reader of the output only needs the newest news
+	private static final int OUTPUT_LIMIT = 200;
+
+	private final Model model;
+	private final File outputDirectory;
+	private final RefreshScheduler scheduler;
+	private final ModelJournal journal;
+	private final MetricsRegistry metrics;
+	private final ScheduledExecutorService output;
+	private FeedServer server;
+	// Categories whose output has to be written again
+	private final Set<String> changed = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Loads the Model, starts refreshing all the Channels and writing the output.
+	 *
+	 * @param outputDirectory Directory to write the feeds to.
+	 * @throws IOException Thrown when the subscriptions can't be loaded or the output directory created.
+	 */
+	public FeederDaemon(final File outputDirectory) throws IOException {
+		this.outputDirectory = outputDirectory;
+		if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			throw new IOException("Nie można utworzyć katalogu " + outputDirectory + ".");
+		}
+
+		Channel.setCache(new FeedCache(new File(FeedCache.DEFAULT_DIRECTORY), FeedCache.DEFAULT_MAX_SIZE));
+		File dataFile = new File(ModelStore.DATA_FILE);
+		File entriesFile = new File(ModelStore.ENTRIES_FILE);
+		if (!dataFile.exists()) {
+			throw new IOException("Brak pliku " + dataFile + " - dodaj kanały w aplikacji albo skopiuj jej pliki.");
+		}
+		model = ModelStore.load(dataFile, entriesFile);
+		ModelJournal.replay(model, new File(ModelJournal.JOURNAL_FILE));
+		if (entriesFile.exists()) {
+			ModelStore.loadEntries(model, entriesFile);
+		}
+		journal = new ModelJournal(model, dataFile, entriesFile, new File(ModelJournal.JOURNAL_FILE));
+		metrics = new MetricsRegistry(model);
+
+		// cached entries are written right away, the refreshes follow
+		for (Category category : model.getCategoriesMap().values()) {
+			changed.add(category.getName());
+		}
+		model.addModelListener(this);
+
+		// not a daemon thread - it keeps the process alive
+		output = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				return new Thread(runnable, "feeder-output");
+			}
+		});
+		output.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				writeChanged();
+			}
+		}, 0, OUTPUT_INTERVAL, TimeUnit.MILLISECONDS);
+
+		scheduler = new RefreshScheduler();
+		for (Channel channel : model.getAllChannels()) {
+			scheduler.schedule(channel);
+		}
+	}
+
+	/**
+	 * Starts serving the feeds over HTTP.
+	 *
+	 * @param port Port to listen on, on all interfaces.
+	 * @throws IOException Thrown when the port can't be bound.
+	 */
+	public synchronized void serve(final int port) throws IOException {
+		server = new FeedServer(model, new InetSocketAddress(port));
+		server.start();
+	}
+
+	/**
+	 * Stops refreshing, writes the last changes and flushes the journal.
+	 */
+	public void shutdown() {
+		synchronized (this) {
+			if (server != null) {
+				server.stop();
+			}
+		}
+		scheduler.shutdown();
+		metrics.close();
+		output.shutdown();
+		try {
+			output.awaitTermination(OUTPUT_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		writeChanged();
+
+		try {
+			journal.close();
+		}
+		catch (IOException e) {
+			try {
+				ModelStore.save(model, new File(ModelStore.DATA_FILE), new File(ModelStore.ENTRIES_FILE));
+			}
+			catch (IOException saveException) {
+				System.err.println("Nie można zapisać listy kanałów: " + saveException.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Writes the feeds of the Categories which changed since the last time
+	 * and the feed of all of them if any did.
+	 */
+	private synchronized void writeChanged() {
+		if (changed.isEmpty()) return;
+
+		List<String> names = new ArrayList<String>(changed);
+		changed.removeAll(names);
+		List<Category> categories;
+		synchronized (model) {
+			categories = new ArrayList<Category>(model.getCategoriesMap().values());
+		}
+
+		// merged outside of the Model lock, refreshing Channels mustn't wait for the output
+		List<List<News>> contents = new ArrayList<List<News>>(categories.size());
+		for (Category category : categories) {
+			List<News> content = category.aggregate(OUTPUT_LIMIT).getCurrentContent();
+			if (names.contains(category.getName())) {
+				write(fileName(category.getName()), category.getName(), content);
+			}
+			contents.add(content);
+		}
+		write(ALL_FILE, "Feeder", NewsMerger.merge(contents, OUTPUT_LIMIT, true));
+	}
+
+	/**
+	 * Writes the feed to a temporary file and renames it, so a web server never serves half of it.
+	 */
+	private void write(final String fileName, final String title, final List<News> content) {
+		File file = new File(outputDirectory, fileName);
+		File temporary = new File(outputDirectory, fileName + ".tmp");
+		try {
+			OutputStream stream = new BufferedOutputStream(new FileOutputStream(temporary));
+			try {
+				FeedWriter.writeRss(title, content, stream);
+			}
+			finally {
+				stream.close();
+			}
+			Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException e) {
+			System.err.println("Nie można zapisać pliku " + file + ": " + e.getMessage());
+			temporary.delete();
+		}
+	}
+
+	/**
+	 * The readable part keeps only lower-case ASCII letters, digits and '-', so it's safe on every
+	 * file system and in a URL. Names like "Wiadomości" and "Wiadomo_ci" or "News" and "news" look
+	 * the same there, so a checksum of the exact name is appended and each Category gets its own file
+	 * (which also never clashes with {@link #ALL_FILE}).
+	 *
+	 * @return Name of the output file of the Category.
+	 */
+	static String fileName(final String categoryName) {
+		StringBuilder name = new StringBuilder(categoryName.length() + 13);
+		for (int i = 0; i < categoryName.length(); i++) {
+			char character = Character.toLowerCase(categoryName.charAt(i));
+			boolean isSafe = character < 128 && Character.isLetterOrDigit(character) || character == '-';
+			name.append(isSafe ? character : '_');
+		}
+		CRC32 checksum = new CRC32();
+		checksum.update(categoryName.getBytes(StandardCharsets.UTF_8));
+		return name.append(String.format(Locale.ROOT, "-%08x.xml", checksum.getValue())).toString();
+	}
+
+	@Override
+	public void categoryAdded(String name) {
+		changed.add(name);
+	}
+
+	@Override
+	public void categoryRenamed(String oldName, String newName) {
+		new File(outputDirectory, fileName(oldName)).delete();
+		changed.add(newName);
+	}
+
+	@Override
+	public void categoryRemoved(String name) {
+		new File(outputDirectory, fileName(name)).delete();
+	}
+
+	@Override
+	public void channelAdded(String categoryName, Channel channel) {
+		changed.add(categoryName);
+	}
+
+	@Override
+	public void channelRenamed(String categoryName, String oldName, String newName) {
+		changed.add(categoryName);
+	}
+
+	@Override
+	public void channelUrlChanged(String categoryName, String channelName, String newUrl) {
+		// the content changes with the next refresh
+	}
+
+	@Override
+	public void channelMoved(String channelName, String oldCategoryName, String newCategoryName) {
+		changed.add(oldCategoryName);
+		changed.add(newCategoryName);
+	}
+
+	@Override
+	public void channelRemoved(String categoryName, Channel channel) {
+		changed.add(categoryName);
+	}
+
+	@Override
+	public void entriesUpdated(String categoryName, Channel channel) {
+		changed.add(categoryName);
+	}
+
+	@Override
+	public void channelStatusChanged(String categoryName, Channel channel) {
+		// a broken Channel keeps its content, the output doesn't change
+	}
+
+	/**
+	 * Main method of the headless mode.
+	 *
+	 * @param args Optional directory for the output files and port of the HTTP server.
+	 */
+	public static void main(String[] args) {
+		// nothing here needs a display, make sure nothing tries to open one
+		System.setProperty("java.awt.headless", "true");
+		File outputDirectory = new File(args.length > 0 ? args[0] : DEFAULT_OUTPUT_DIRECTORY);
+
+		final FeederDaemon daemon;
+		try {
+			daemon = new FeederDaemon(outputDirectory);
+			if (args.length > 1) {
+				daemon.serve(Integer.parseInt(args[1]));
+			}
+		}
+		catch (IOException | NumberFormatException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+			return;
+		}
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			public void run() {
+				daemon.shutdown();
+			}
+		}));
+		System.out.println("Feeder odświeża " + daemon.model.getAllChannels().size() + " kanałów, wyniki w katalogu "
+				+ outputDirectory.getAbsolutePath());
+	}
+}
@@ -1,27 +1,43 @@
 package feeder.controller;
 
+import java.awt.Component;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
 
-import javax.swing.JEditorPane;
+import javax.swing.JFileChooser;
 import javax.swing.JTree;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
 
 import com.rometools.rome.io.FeedException;
 
+import feeder.model.Category;
 import feeder.model.Channel;
+import feeder.model.ChannelMetrics;
+import feeder.model.FeedCache;
 import feeder.model.News;
 import feeder.model.Model;
+import feeder.model.ModelJournal;
+import feeder.model.ModelListener;
+import feeder.model.MetricsRegistry;
+import feeder.model.ModelStore;
+import feeder.model.OpmlFile;
+import feeder.model.OpmlImporter;
+import feeder.model.RefreshScheduler;
+import feeder.model.SearchIndex;
 import feeder.views.EditCategoryDialog;
 import feeder.views.EditFeedDialog;
 import feeder.views.NewCategoryDialog;
 import feeder.views.NewFeedDialog;
+import feeder.views.NewsListPanel;
+import feeder.views.SlowestFeedsDialog;
 import feeder.views.View;
 
 /**
@@ -35,20 +51,43 @@ import feeder.views.View;
  * @version	1.0
  */
 public class Controller {
+	// more hits than this wouldn't be read anyway
+	private static final int SEARCH_LIMIT = 200;
+	// failed feeds listed by name after an import, the rest is only counted
+	private static final int LISTED_FAILURES = 10;
 	private Model model;
+	private final RefreshScheduler scheduler;
+	private final ModelJournal journal;
+	private final SearchIndex searchIndex;
+	private final MetricsRegistry metrics;
 	private DefaultMutableTreeNode selectedNode;
+	private FeedLoader feedLoader;
 	
 	/**
 	 * Constructor. Loads the Model - either from data.dat file (if exists) or 
-	 * loads default model with one category and one channel. Saves the model to file
-	 * before closing of the application using shutdownHook.
+	 * loads default model with one category and one channel. Every change of the model
+	 * is saved right away to the journal, which is flushed before closing of the application
+	 * using shutdownHook. Starts refreshing all the channels in the background
+	 * and exposes their metrics through JMX.
 	 */
 	public Controller() {
+		Channel.setCache(new FeedCache(new File(FeedCache.DEFAULT_DIRECTORY), FeedCache.DEFAULT_MAX_SIZE));
 		model = loadModel();
+		searchIndex = new SearchIndex(model);
+		loadEntries(model);
+		journal = openJournal();
+		metrics = new MetricsRegistry(model);
+		model.addModelListener(new TreeUpdater());
+
+		scheduler = new RefreshScheduler();
+		for (Channel channel : model.getAllChannels()) {
+			scheduler.schedule(channel);
+		}
 
 		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
 			public void run() {
-				saveModel();
+				scheduler.shutdown();
+				closeJournal();
 			}
 		}));
 	}
@@ -59,11 +98,7 @@ public class Controller {
 	
 	private void saveModel() {
 		try {
-			FileOutputStream file = new FileOutputStream("data.dat");
-			ObjectOutputStream data = new ObjectOutputStream(file);
-			data.writeObject(model);
-			data.close();
-			file.close();
+			ModelStore.save(model, new File(ModelStore.DATA_FILE), new File(ModelStore.ENTRIES_FILE));
 		} 
 		catch (IOException e) {
 			View.alertMessage("Wystąpił błąd w zapisie listy kanałów! Upewnij się, że masz prawa do zapisu na dysku.");
@@ -73,14 +108,12 @@ public class Controller {
 	private Model loadModel() {
 		Model model = null;
 
-		if(new File("data.dat").exists()) {			
-			FileInputStream file;
+		if(new File(ModelStore.DATA_FILE).exists()) {			
 			try {
-				file = new FileInputStream("data.dat");
-				model = (Model) new ObjectInputStream(file).readObject();
-				file.close();
+				model = ModelStore.load(new File(ModelStore.DATA_FILE), new File(ModelStore.ENTRIES_FILE));
+				ModelJournal.replay(model, new File(ModelJournal.JOURNAL_FILE));
 			} 
-			catch (ClassNotFoundException | IOException e) {
+			catch (IOException e) {
 				View.alertMessage(e.getMessage());
 			}
 		}
@@ -93,11 +126,66 @@ public class Controller {
 			catch (IllegalArgumentException | FeedException | IOException e) {
 				e.printStackTrace();
 			}
+			// the journal starts from the snapshot
+			new File(ModelJournal.JOURNAL_FILE).delete();
+			this.model = model;
+			saveModel();
 		}
 
 		return model;
 	}
 
+	/**
+	 * @return Journal of the model, null if it couldn't be opened - the model is then saved on exit.
+	 */
+	private ModelJournal openJournal() {
+		try {
+			return new ModelJournal(model, new File(ModelStore.DATA_FILE), new File(ModelStore.ENTRIES_FILE),
+					new File(ModelJournal.JOURNAL_FILE));
+		}
+		catch (IOException e) {
+			View.alertMessage("Wystąpił błąd w zapisie listy kanałów! Zmiany zostaną zapisane dopiero przy zamknięciu programu.");
+			return null;
+		}
+	}
+
+	private void closeJournal() {
+		if (journal == null) {
+			saveModel();
+			return;
+		}
+		try {
+			journal.close();
+		}
+		catch (IOException e) {
+			saveModel();
+		}
+	}
+
+	/**
+	 * Cached entries can be big, so they are read in the background
+	 * and the application starts as soon as the subscriptions are loaded.
+	 * They become searchable once they are read.
+	 */
+	private void loadEntries(final Model model) {
+		if (!new File(ModelStore.ENTRIES_FILE).exists()) return;
+
+		Thread loader = new Thread(new Runnable() {
+			public void run() {
+				try {
+					ModelStore.loadEntries(model, new File(ModelStore.ENTRIES_FILE));
+					searchIndex.reindexAll();
+				}
+				catch (IOException e) {
+					// entries are only a cache, channels will fetch them again
+					System.err.println("Nie można wczytać wpisów: " + e.getMessage());
+				}
+			}
+		}, "feeder-load-entries");
+		loader.setDaemon(true);
+		loader.start();
+	}
+
 	///////////////////////////////////////////////////
 	///////////// VIEW COMPONENTS HELPERS /////////////
 	///////////////////////////////////////////////////
@@ -118,32 +206,297 @@ public class Controller {
 	}
 	
 	/**
-	 * Converts Channel object to an HTML string displayable by JPane.
+	 * Converts already loaded List of News to an HTML string displayable by JPane.
+	 * Doesn't touch the network, so it's safe to call it from any thread.
 	 * 
-	 * @param channel Channel to format.
+	 * @param title Title of the page.
+	 * @param content News to format.
+	 * @param isAggregated True if the news come from many channels and their source should be shown.
 	 * @return HTML-formatted String ready to be displayed.
 	 */
-	public String convertNewsToHTML(Channel channel) {
-		// maybe should've used something like Gagawa
-		// but I think it's not worth the hassle
-		String html = "<html><h2 style='font-family: Tahoma'>" + channel.getName() + "</h2>";
+	public String convertNewsToHTML(String title, List<News> content, boolean isAggregated) {
+		return HtmlRenderer.render(title, content, isAggregated);
+	}
 
-		try {
-			for(News news : channel.getChannelContent()) {
-				html += "<div style='font-family: Tahoma; font-size:13px; margin-bottom: 10px'>";
-				html += "<a style='font-weight: bold;' href='" + news.getLink() + "'>" + news.getTitle() + "</a>";
-				html += " (" + news.getDate() + ")<br>";
-				if(channel.isAggregated() == true) {
-					html += "Z kanału: " + news.getChannel() + "<br>";
+	/**
+	 * <b>FeedLoader</b> fetches a Channel or a whole Category in the background,
+	 * so the Event Dispatch Thread never waits for the network. Categories are displayed
+	 * progressively - the list is replaced as the channels arrive.
+	 */
+	private class FeedLoader extends SwingWorker<List<News>, List<News>> {
+		// don't merge a big category again on every single channel
+		private static final long PUBLISH_INTERVAL = 250;
+		private final Category category;
+		private final Channel channel;
+		private final NewsListPanel newsPanel;
+		private final String title;
+		private long lastPublished = 0;
+
+		/**
+		 * @param category Category to load, null if loading a single Channel.
+		 * @param channel Channel to load, null if loading a Category.
+		 * @param newsPanel Display panel to fill.
+		 */
+		public FeedLoader(Category category, Channel channel, NewsListPanel newsPanel) {
+			this.category = category;
+			this.channel = channel;
+			this.newsPanel = newsPanel;
+			title = channel != null ? channel.getName() : category.getName();
+		}
+
+		@Override
+		protected List<News> doInBackground() throws Exception {
+			if (channel != null) {
+				// show what we have on the disk while the feed is revalidated
+				if (channel.loadFromCache()) {
+					searchIndex.index(channel);
+				}
+				if (!channel.getCurrentContent().isEmpty()) {
+					publish(channel.getCurrentContent());
+				}
+				try {
+					return channel.getChannelContent();
+				}
+				catch (IllegalArgumentException | FeedException | IOException e) {
+					// the last good content is better than nothing, the tree shows when the Channel is broken
+					if (!channel.getCurrentContent().isEmpty()) {
+						return channel.getCurrentContent();
+					}
+					throw e;
 				}
-				html += news.getDescription() + "</div><hr>";
 			}
-		} 
-		catch (IllegalArgumentException | FeedException | IOException e) {
-			View.alertMessage("Wystąpił problem przy wczytywaniu nagłówków.");
+
+			boolean loaded = false;
+			for (Channel child : category.getChannels()) {
+				if (child.loadFromCache()) {
+					searchIndex.index(child);
+					loaded = true;
+				}
+			}
+			if (loaded) {
+				publish(category.aggregate().getCurrentContent());
+			}
+
+			Channel aggregated = category.getAggregatedFeed(new Category.RefreshListener() {
+				@Override
+				public void channelRefreshed(Channel refreshed) {
+					long now = System.currentTimeMillis();
+					if (!isCancelled() && now - lastPublished >= PUBLISH_INTERVAL) {
+						lastPublished = now;
+						publish(category.aggregate().getCurrentContent());
+					}
+				}
+			});
+			return aggregated.getCurrentContent();
+		}
+
+		@Override
+		protected void process(List<List<News>> contents) {
+			if (!isCancelled()) {
+				show(contents.get(contents.size() - 1));
+			}
+		}
+
+		@Override
+		protected void done() {
+			if (isCancelled()) return;
+			try {
+				show(get());
+			}
+			catch (ExecutionException e) {
+				newsPanel.showMessage(title, "błąd");
+				Throwable cause = e.getCause() != null ? e.getCause() : e;
+				View.alertMessage("Wystąpił problem przy wczytywaniu nagłówków (" + title + "):\n"
+						+ cause.getClass().getSimpleName() + (cause.getMessage() != null ? ": " + cause.getMessage() : ""));
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		/**
+		 * Shows the news, measuring how long it takes for a Channel.
+		 */
+		private void show(final List<News> content) {
+			long start = System.nanoTime();
+			newsPanel.showNews(title, content, category != null);
+			if (channel != null) {
+				channel.getMetrics().recordRender(System.nanoTime() - start);
+			}
+		}
+	}
+
+	/**
+	 * <b>TreeUpdater</b> redraws the nodes of Channels which became broken or work again.
+	 * The Channels are fetched on background threads, the tree is updated on the Event Dispatch Thread.
+	 * Other changes of the Model update the tree by themselves.
+	 */
+	private class TreeUpdater implements ModelListener {
+		@Override
+		public void categoryAdded(String name) {
+		}
+
+		@Override
+		public void categoryRenamed(String oldName, String newName) {
+		}
+
+		@Override
+		public void categoryRemoved(String name) {
+		}
+
+		@Override
+		public void channelAdded(String categoryName, Channel channel) {
+		}
+
+		@Override
+		public void channelRenamed(String categoryName, String oldName, String newName) {
+		}
+
+		@Override
+		public void channelUrlChanged(String categoryName, String channelName, String newUrl) {
+		}
+
+		@Override
+		public void channelMoved(String channelName, String oldCategoryName, String newCategoryName) {
+		}
+
+		@Override
+		public void channelRemoved(String categoryName, Channel channel) {
+		}
+
+		@Override
+		public void entriesUpdated(String categoryName, Channel channel) {
+		}
+
+		@Override
+		public void channelStatusChanged(String categoryName, final Channel channel) {
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					model.channelNodeChanged(channel);
+				}
+			});
+		}
+	}
+
+	/**
+	 * <b>NewFeed</b> fetches a new Channel for the first time in the background,
+	 * it's added to the Model on the Event Dispatch Thread only when its feed works.
+	 */
+	private class NewFeed extends SwingWorker<Channel, Void> {
+		private final String name;
+		private final String url;
+		private final String category;
+
+		/**
+		 * @param name Name of the Feed.
+		 * @param url URL of the Feed.
+		 * @param category Category to put the new Feed.
+		 */
+		public NewFeed(String name, String url, String category) {
+			this.name = name;
+			this.url = url;
+			this.category = category;
+		}
+
+		@Override
+		protected Channel doInBackground() throws Exception {
+			return new Channel(name, url);
 		}
 
-		return html;
+		@Override
+		protected void done() {
+			try {
+				Channel channel = get();
+				if(!model.addChannel(channel, category)) {
+					View.alertMessage("Kanał o takiej nazwie już istnieje!");
+				}
+				else {
+					scheduler.schedule(channel);
+				}
+			}
+			catch (ExecutionException e) {
+				Throwable cause = e.getCause() != null ? e.getCause() : e;
+				View.alertMessage("Nie udało się wczytać kanału " + url + ":\n"
+						+ cause.getClass().getSimpleName() + (cause.getMessage() != null ? ": " + cause.getMessage() : ""));
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * <b>OpmlImport</b> validates imported feeds in the background and shows the progress.
+	 * All the valid ones are added to the Model at once on the Event Dispatch Thread,
+	 * so the tree is updated in a single batch.
+	 */
+	private class OpmlImport extends SwingWorker<OpmlImporter.Result, Integer> {
+		private final List<OpmlFile.Subscription> subscriptions;
+		private final ProgressMonitor monitor;
+
+		/**
+		 * @param parent Window the progress is shown over.
+		 * @param subscriptions Feeds read from the OPML file.
+		 */
+		public OpmlImport(Component parent, List<OpmlFile.Subscription> subscriptions) {
+			this.subscriptions = subscriptions;
+			monitor = new ProgressMonitor(parent, "Importowanie kanałów...", "", 0, subscriptions.size());
+			monitor.setMillisToDecideToPopup(0);
+			monitor.setMillisToPopup(0);
+		}
+
+		@Override
+		protected OpmlImporter.Result doInBackground() throws Exception {
+			return new OpmlImporter(model).validate(subscriptions, new OpmlImporter.ProgressListener() {
+				@Override
+				public void feedValidated(OpmlFile.Subscription subscription, boolean isValid, int done, int total) {
+					publish(done);
+				}
+			});
+		}
+
+		@Override
+		protected void process(List<Integer> done) {
+			if (monitor.isCanceled()) {
+				cancel(true);
+				return;
+			}
+			int last = done.get(done.size() - 1);
+			monitor.setProgress(last);
+			monitor.setNote("Sprawdzono " + last + " z " + subscriptions.size());
+		}
+
+		@Override
+		protected void done() {
+			monitor.close();
+			if (isCancelled()) return;
+			try {
+				OpmlImporter.Result result = get();
+				List<Channel> added = model.addChannels(result.getChannels());
+				for (Channel channel : added) {
+					scheduler.schedule(channel);
+				}
+
+				StringBuilder message = new StringBuilder("Zaimportowano kanałów: " + added.size() + ".");
+				if (result.getSkipped() > 0) {
+					message.append("\nPominięto już subskrybowane: ").append(result.getSkipped()).append(".");
+				}
+				if (!result.getFailed().isEmpty()) {
+					message.append("\nNie udało się wczytać: ").append(result.getFailed().size()).append(".");
+					for (int i = 0; i < Math.min(LISTED_FAILURES, result.getFailed().size()); i++) {
+						OpmlFile.Subscription failed = result.getFailed().get(i);
+						message.append("\n - ").append(failed.getName()).append(" (").append(failed.getUrl()).append(")");
+					}
+				}
+				View.alertMessage(message.toString());
+			}
+			catch (ExecutionException e) {
+				View.alertMessage("Wystąpił błąd przy importowaniu kanałów.");
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
 	}
 
 	////////////////////////////////////////////
@@ -156,25 +509,29 @@ public class Controller {
 	 * which changes the contents of main panel.
 	 * 
 	 * @param tree Reference to JTree.
-	 * @param feedPresenter Reference to display panel.
+	 * @param newsPanel Reference to display panel.
 	 */
-	public void elementInTreeFocused(JTree tree, JEditorPane feedPresenter) {
+	public void elementInTreeFocused(JTree tree, NewsListPanel newsPanel) {
 		try {
 			DefaultMutableTreeNode node = (DefaultMutableTreeNode) tree.getLastSelectedPathComponent();
 			if (node == null) return;
 			Object nodeInfo = node.getUserObject();
 			DefaultMutableTreeNode category = (DefaultMutableTreeNode) node.getParent();
 
+			// whatever was loading before is not needed anymore
+			if (feedLoader != null) {
+				feedLoader.cancel(true);
+			}
+
 			if(category.equals(model.getRoot())) {
 				// parameter is nodeInfo, NOT category, category contains Root
-				String content = convertNewsToHTML(model.getCategoryChannel(nodeInfo.toString()));
-				feedPresenter.setText(content);
+				feedLoader = new FeedLoader(model.getCategoriesMap().get(nodeInfo.toString()), null, newsPanel);
 			}
 			else { 
-				String content = convertNewsToHTML(model.getChannel(category.toString(), nodeInfo.toString()));
-				feedPresenter.setText(content);
+				feedLoader = new FeedLoader(null, model.getChannel(category.toString(), nodeInfo.toString()), newsPanel);
 			}
-			feedPresenter.setCaretPosition(0);
+			newsPanel.showMessage(nodeInfo.toString(), "Wczytywanie...");
+			feedLoader.execute();
 		}
 		catch (NoSuchElementException | IllegalArgumentException exception) {
 			View.alertMessage(exception.getMessage());
@@ -183,19 +540,104 @@ public class Controller {
 	}
 	
 	/**
-	 * Handles event of adding a new Feed.
+	 * Handles event of searching for News. Shows the hits from all the Channels
+	 * in the display panel, using only the entries which are already loaded.
+	 * 
+	 * @param query Words to look for.
+	 * @param newsPanel Reference to display panel.
+	 */
+	public void searchEvent(String query, NewsListPanel newsPanel) {
+		if (query.trim().isEmpty()) return;
+
+		// the search replaces whatever was loading
+		if (feedLoader != null) {
+			feedLoader.cancel(true);
+		}
+
+		List<News> hits = searchIndex.search(query, SEARCH_LIMIT);
+		if (hits.isEmpty()) {
+			newsPanel.showMessage("Wyniki wyszukiwania: " + query, "nie znaleziono żadnych nagłówków.");
+		}
+		else {
+			newsPanel.showNews("Wyniki wyszukiwania: " + query, hits, true);
+		}
+	}
+
+	/**
+	 * Handles event of selecting a News on the list - shows its details.
+	 * 
+	 * @param newsPanel Reference to display panel.
+	 */
+	public void newsSelected(NewsListPanel newsPanel) {
+		News news = newsPanel.getSelectedNews();
+		if (news == null) {
+			newsPanel.showDetail("");
+		}
+		else {
+			newsPanel.showDetail(HtmlRenderer.render(news, newsPanel.isAggregated()));
+		}
+	}
+
+	/**
+	 * Handles event of adding a new Feed. The feed is fetched in the background
+	 * and appears in the tree once it has been loaded.
 	 * 
 	 * @param name Name of the Feed.
 	 * @param url URL of the Feed.
 	 * @param category Category to put the new Feed.
 	 */
 	public void addNewFeedEvent(String name, String url, String category) {
-		try {
-			if(!model.addNewChannel(name, url, category)) {
-				View.alertMessage("Kanał o takiej nazwie już istnieje!");
-			}
-		} catch (IllegalArgumentException | FeedException | IOException e) {
+		Category existing = model.getCategoriesMap().get(category);
+		if (existing != null && existing.getChannel(name) != null) {
+			// no need to fetch it at all
 			View.alertMessage("Kanał o takiej nazwie już istnieje!");
+			return;
+		}
+		new NewFeed(name, url, category).execute();
+	}
+
+	/**
+	 * Handles event of importing subscriptions from an OPML file. The feeds are checked
+	 * in the background, the tree gets all the valid ones at the end.
+	 * 
+	 * @param parent Window to show the dialogs over.
+	 */
+	public void importOpml(Component parent) {
+		JFileChooser chooser = new JFileChooser();
+		chooser.setFileFilter(new FileNameExtensionFilter("OPML", "opml", "xml"));
+		if (chooser.showOpenDialog(parent) != JFileChooser.APPROVE_OPTION) return;
+
+		List<OpmlFile.Subscription> subscriptions;
+		try {
+			subscriptions = OpmlFile.read(chooser.getSelectedFile());
+		}
+		catch (IOException e) {
+			View.alertMessage(e.getMessage());
+			return;
+		}
+		if (subscriptions.isEmpty()) {
+			View.alertMessage("Plik nie zawiera żadnych kanałów.");
+			return;
+		}
+		new OpmlImport(parent, subscriptions).execute();
+	}
+
+	/**
+	 * Handles event of exporting all subscriptions to an OPML file.
+	 * 
+	 * @param parent Window to show the dialogs over.
+	 */
+	public void exportOpml(Component parent) {
+		JFileChooser chooser = new JFileChooser();
+		chooser.setFileFilter(new FileNameExtensionFilter("OPML", "opml"));
+		chooser.setSelectedFile(new File("feeder.opml"));
+		if (chooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION) return;
+
+		try {
+			OpmlFile.write(model, chooser.getSelectedFile());
+		}
+		catch (IOException e) {
+			View.alertMessage("Wystąpił błąd przy zapisie pliku " + chooser.getSelectedFile() + ".");
 		}
 	}
 
@@ -277,6 +719,21 @@ public class Controller {
 		dialog.setVisible(true);
 	}
 	
+	/**
+	 * Handles an event of choosing Slowest feeds from the menu.
+	 */
+	public void showSlowestFeeds() {
+		SlowestFeedsDialog dialog = new SlowestFeedsDialog(this);
+		dialog.setVisible(true);
+	}
+
+	/**
+	 * @return Measurements of all Channels, the slowest ones first.
+	 */
+	public List<ChannelMetrics> getSlowestFeeds() {
+		return metrics.getSlowest(0);
+	}
+
 	/**
 	 * Handles event of choosing "Edit" option from Tree context menu. Dependant on the clicked node.
 	 */
@@ -303,9 +760,13 @@ public class Controller {
 			}
 		}
 		else {
+			Channel channel = model.getChannel(getSelectedNodeChannelCategory(), getSelectedNodeChannelName());
 			if(model.removeChannel(getSelectedNodeChannelName(), getSelectedNodeChannelCategory()) == false) {
 				View.alertMessage("Nie można było usunąć kanału.");
 			}
+			else {
+				scheduler.unschedule(channel);
+			}
 		}
 	}
 	
@@ -343,4 +804,18 @@ public class Controller {
 	public String getSelectedNodeChannelCategory() {
 		return selectedNode.getParent().toString();
 	}
+
+	/**
+	 * @param node Node of the tree.
+	 * @return Last error of the Channel of the node if it's broken, null if it works or the node is a Category.
+	 * @see Channel#isBroken()
+	 */
+	public String getBrokenChannelError(DefaultMutableTreeNode node) {
+		if (node.getParent() == null || node.getParent() == model.getRoot()) return null;
+		Category category = model.getCategoriesMap().get(node.getParent().toString());
+		Channel channel = category != null ? category.getChannel(node.toString()) : null;
+		if (channel == null || !channel.isBroken()) return null;
+		String error = channel.getMetrics().getLastError();
+		return error != null ? error : "";
+	}
 } 
\ No newline at end of file
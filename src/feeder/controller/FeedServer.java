@@ -0,0 +1,357 @@
+package feeder.controller;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import feeder.model.Category;
+import feeder.model.Channel;
+import feeder.model.FeedWriter;
+import feeder.model.Model;
+import feeder.model.News;
+import feeder.model.NewsMerger;
+
+/**
+ * <b>FeedServer</b> serves the feeds of the Model over HTTP, so other readers on the network
+ * can subscribe to them:
+ * <pre>
+ * /                                   list of all feeds (JSON)
+ * /all.{rss|atom|json}                all the Categories together
+ * /category/{name}.{rss|atom|json}    aggregated feed of a Category
+ * /channel/{category}/{name}.{rss|atom|json}
+ * </pre>
+ * Every document is rendered once and kept, plain and gzipped, until its content changes -
+ * Categories cache their aggregated Channels, so checking that is only a comparison
+ * of references. Responses carry strong ETags, conditional requests get 304 Not Modified
+ * and connections are kept alive, so repeated polling costs almost nothing.
+ *
+ * @version	1.0
+ */
+public class FeedServer {
+	/** Port used if none is given. */
+	public static final int DEFAULT_PORT = 8080;
+	// a reader only needs the newest news, older ones are in the application
+	private static final int FEED_LIMIT = 200;
+	private static final int THREADS = 8;
+	private static final int BACKLOG = 256;
+	private static final String[] FORMATS = { "rss", "atom", "json" };
+	private static final String[] CONTENT_TYPES = { "application/rss+xml; charset=utf-8",
+			"application/atom+xml; charset=utf-8", "application/feed+json; charset=utf-8" };
+	private static final String INDEX_CONTENT_TYPE = "application/json; charset=utf-8";
+
+	static {
+		// headers and body are written separately - with Nagle's algorithm the body waits
+		// for the client's delayed ACK of the headers, which caps a connection at ~25 responses/s
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private final Model model;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final Map<String, Rendered> rendered = new ConcurrentHashMap<String, Rendered>();
+
+	/**
+	 * Document ready to be sent, with the content it was rendered from.
+	 */
+	private static final class Rendered {
+		// references to the lists of News the document was rendered from
+		private final Object[] sources;
+		private final byte[] body;
+		private final byte[] gzippedBody;
+		private final String etag;
+		private final String contentType;
+
+		Rendered(Object[] sources, byte[] body, String contentType) throws IOException {
+			this.sources = sources;
+			this.body = body;
+			this.contentType = contentType;
+			ByteArrayOutputStream gzipped = new ByteArrayOutputStream(body.length / 4 + 64);
+			GZIPOutputStream output = new GZIPOutputStream(gzipped);
+			output.write(body);
+			output.close();
+			gzippedBody = gzipped.toByteArray();
+			etag = hash(body);
+		}
+
+		boolean isCurrent(Object[] currentSources) {
+			if (sources.length != currentSources.length) return false;
+			for (int i = 0; i < sources.length; i++) {
+				if (sources[i] != currentSources[i]) return false;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Creates the server, it doesn't accept connections until {@link #start()}.
+	 *
+	 * @param model Model to serve.
+	 * @param address Address and port to listen on.
+	 * @throws IOException Thrown when the port can't be bound.
+	 */
+	public FeedServer(final Model model, final InetSocketAddress address) throws IOException {
+		this.model = model;
+		server = HttpServer.create(address, BACKLOG);
+		executor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "feeder-http");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+		server.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					serve(exchange);
+				}
+				catch (RuntimeException e) {
+					sendError(exchange, 500);
+				}
+				finally {
+					exchange.close();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Starts accepting connections.
+	 */
+	public void start() {
+		server.start();
+	}
+
+	/**
+	 * Stops the server, requests in progress get a second to finish.
+	 */
+	public void stop() {
+		server.stop(1);
+		executor.shutdown();
+	}
+
+	/**
+	 * @return Address the server listens on.
+	 */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	private void serve(final HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod();
+		if (!"GET".equals(method) && !"HEAD".equals(method)) {
+			exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+			sendError(exchange, 405);
+			return;
+		}
+
+		String path = exchange.getRequestURI().getPath();
+		if ("/".equals(path)) {
+			send(exchange, new Rendered(new Object[0], index(), INDEX_CONTENT_TYPE));
+			return;
+		}
+
+		int dot = path.lastIndexOf('.');
+		int format = dot > 0 ? Arrays.asList(FORMATS).indexOf(path.substring(dot + 1)) : -1;
+		if (format < 0) {
+			sendError(exchange, 404);
+			return;
+		}
+		String[] parts = path.substring(1, dot).split("/", 3);
+
+		String title;
+		List<Category> categories = new ArrayList<Category>();
+		Channel channel = null;
+		synchronized (model) {
+			if (parts.length == 1 && "all".equals(parts[0])) {
+				title = "Feeder";
+				categories.addAll(model.getCategoriesMap().values());
+			}
+			else if (parts.length == 2 && "category".equals(parts[0]) && model.getCategoriesMap().containsKey(parts[1])) {
+				title = parts[1];
+				categories.add(model.getCategoriesMap().get(parts[1]));
+			}
+			else if (parts.length == 3 && "channel".equals(parts[0]) && model.getCategoriesMap().containsKey(parts[1])
+					&& model.getChannel(parts[1], parts[2]) != null) {
+				title = parts[2];
+				channel = model.getChannel(parts[1], parts[2]);
+			}
+			else {
+				sendError(exchange, 404);
+				return;
+			}
+		}
+
+		// cached by the Categories - only merged again after a Channel changed
+		List<List<News>> contents = new ArrayList<List<News>>();
+		if (channel != null) {
+			contents.add(channel.getCurrentContent());
+		}
+		for (Category category : categories) {
+			contents.add(category.aggregate().getCurrentContent());
+		}
+
+		// the content lists are replaced, never modified, so the same lists mean the same document
+		Object[] sources = contents.toArray();
+		Rendered document = rendered.get(path);
+		if (document == null || !document.isCurrent(sources)) {
+			List<News> content = contents.size() == 1 ? contents.get(0) : NewsMerger.merge(contents, FEED_LIMIT, true);
+			document = new Rendered(sources, render(title, content.subList(0, Math.min(FEED_LIMIT, content.size())), format),
+					CONTENT_TYPES[format]);
+			rendered.put(path, document);
+		}
+		send(exchange, document);
+	}
+
+	private static byte[] render(final String title, final List<News> content, final int format) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream(content.size() * 512 + 512);
+		switch (format) {
+		case 0:
+			FeedWriter.writeRss(title, content, output);
+			break;
+		case 1:
+			FeedWriter.writeAtom(title, content, output);
+			break;
+		default:
+			FeedWriter.writeJson(title, content, output);
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * Lists the feeds of all Categories and Channels with their addresses.
+	 */
+	private byte[] index() {
+		StringBuilder json = new StringBuilder("{\"all\":\"/all.rss\",\"categories\":[");
+		synchronized (model) {
+			boolean isFirstCategory = true;
+			for (Category category : model.getCategoriesMap().values()) {
+				json.append(isFirstCategory ? "\n{" : ",\n{");
+				isFirstCategory = false;
+				json.append("\"name\":").append(quote(category.getName()));
+				json.append(",\"feed\":").append(quote("/category/" + encode(category.getName()) + ".rss"));
+				json.append(",\"channels\":[");
+				boolean isFirstChannel = true;
+				for (Channel channel : category.getChannelsMap().values()) {
+					json.append(isFirstChannel ? "" : ",");
+					isFirstChannel = false;
+					json.append("{\"name\":").append(quote(channel.getName()));
+					json.append(",\"feed\":").append(quote("/channel/" + encode(category.getName()) + "/" + encode(channel.getName()) + ".rss"));
+					json.append('}');
+				}
+				json.append("]}");
+			}
+		}
+		json.append("\n]}\n");
+		return json.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Sends the document - gzipped if the client accepts it, only the headers if the client
+	 * already has the same version.
+	 */
+	private static void send(final HttpExchange exchange, final Rendered document) throws IOException {
+		Headers request = exchange.getRequestHeaders();
+		String acceptEncoding = request.getFirst("Accept-Encoding");
+		boolean isGzipped = acceptEncoding != null && acceptEncoding.contains("gzip");
+		// each encoding is a different representation, so it needs its own strong ETag
+		String etag = "\"" + document.etag + (isGzipped ? "-gz\"" : "\"");
+
+		Headers response = exchange.getResponseHeaders();
+		response.set("ETag", etag);
+		response.set("Vary", "Accept-Encoding");
+		response.set("Cache-Control", "no-cache");
+		response.set("Content-Type", document.contentType);
+
+		String ifNoneMatch = request.getFirst("If-None-Match");
+		if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || "*".equals(ifNoneMatch.trim()))) {
+			exchange.sendResponseHeaders(304, -1);
+			return;
+		}
+
+		byte[] body = isGzipped ? document.gzippedBody : document.body;
+		if (isGzipped) {
+			response.set("Content-Encoding", "gzip");
+		}
+		if ("HEAD".equals(exchange.getRequestMethod())) {
+			exchange.sendResponseHeaders(200, -1);
+			return;
+		}
+		// a known length keeps the connection open for the next request
+		exchange.sendResponseHeaders(200, body.length);
+		OutputStream output = exchange.getResponseBody();
+		output.write(body);
+		output.close();
+	}
+
+	private static void sendError(final HttpExchange exchange, final int status) throws IOException {
+		exchange.sendResponseHeaders(status, -1);
+	}
+
+	private static String hash(final byte[] body) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(body);
+			StringBuilder hex = new StringBuilder(32);
+			for (int i = 0; i < 16; i++) {
+				hex.append(Character.forDigit((digest[i] >> 4) & 0xf, 16)).append(Character.forDigit(digest[i] & 0xf, 16));
+			}
+			return hex.toString();
+		}
+		catch (NoSuchAlgorithmException e) {
+			// every Java platform has SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String quote(final String text) {
+		StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+		for (int i = 0; i < text.length(); i++) {
+			char character = text.charAt(i);
+			if (character == '"' || character == '\\') {
+				quoted.append('\\').append(character);
+			}
+			else if (character < 0x20) {
+				quoted.append(String.format("\\u%04x", (int) character));
+			}
+			else {
+				quoted.append(character);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	/**
+	 * Encodes a name for a path, "+" means a plus sign there, not a space.
+	 */
+	private static String encode(final String name) {
+		try {
+			return URLEncoder.encode(name, "UTF-8").replace("+", "%20");
+		}
+		catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package feeder.controller;
+
+import java.util.List;
+
+import feeder.model.News;
+
+/**
+ * <b>HtmlRenderer</b> formats a List of News (or a single one) into the HTML page displayed by JEditorPane.
+ * The whole page is written into a single StringBuilder sized up front, so the cost
+ * is linear in the number of news and there's no garbage from intermediate Strings.
+ * All the texts coming from feeds are escaped.
+ * 
+ * @version	1.0
+ */
+public final class HtmlRenderer {
+	private static final String HEADER_START = "<html><h2 style='font-family: Tahoma'>";
+	private static final String HEADER_END = "</h2>";
+	private static final String NEWS_START = "<div style='font-family: Tahoma; font-size:13px; margin-bottom: 10px'>";
+	private static final String LINK_START = "<a style='font-weight: bold;' href='";
+	private static final String LINK_MIDDLE = "'>";
+	private static final String LINK_END = "</a>";
+	private static final String DATE_START = " (";
+	private static final String DATE_END = ")";
+	private static final String SOURCE_START = "Z kanału: ";
+	private static final String LINE_BREAK = "<br>";
+	private static final String NEWS_DETAIL_END = "</div>";
+	private static final String NEWS_END = "<hr>";
+	private static final String PAGE_START = "<html>";
+	private static final int DATE_LENGTH = "dd.MM.yyyy, HH:mm".length();
+	private static final int NEWS_OVERHEAD = NEWS_START.length() + LINK_START.length() + LINK_MIDDLE.length()
+			+ LINK_END.length() + DATE_START.length() + DATE_END.length() + SOURCE_START.length()
+			+ 2 * LINE_BREAK.length() + NEWS_DETAIL_END.length() + NEWS_END.length();
+	// some room for escaped characters, so the buffer doesn't have to grow
+	private static final double ESCAPE_MARGIN = 1.05;
+
+	private HtmlRenderer() {
+	}
+
+	/**
+	 * Renders the whole page.
+	 * 
+	 * @param title Title of the page.
+	 * @param content News to format.
+	 * @param isAggregated True if the news come from many channels and their source should be shown.
+	 * @return HTML-formatted String ready to be displayed.
+	 */
+	public static String render(String title, List<News> content, boolean isAggregated) {
+		StringBuilder html = new StringBuilder(estimateLength(title, content));
+		render(title, content, isAggregated, html);
+		return html.toString();
+	}
+
+	/**
+	 * Renders the whole page into the given buffer.
+	 * 
+	 * @param title Title of the page.
+	 * @param content News to format.
+	 * @param isAggregated True if the news come from many channels and their source should be shown.
+	 * @param html Buffer to append to.
+	 */
+	public static void render(String title, List<News> content, boolean isAggregated, StringBuilder html) {
+		html.append(HEADER_START);
+		escape(title, html);
+		html.append(HEADER_END);
+
+		for (News news : content) {
+			renderNews(news, isAggregated, html);
+			html.append(NEWS_END);
+		}
+	}
+
+	/**
+	 * Renders a single News, e.g. the one selected in the list.
+	 * 
+	 * @param news News to format.
+	 * @param isAggregated True if the source of the news should be shown.
+	 * @return HTML-formatted String ready to be displayed.
+	 */
+	public static String render(News news, boolean isAggregated) {
+		StringBuilder html = new StringBuilder(NEWS_OVERHEAD + length(news.getLink()) + length(news.getTitle())
+				+ DATE_LENGTH + length(news.getChannel()) + length(news.getDescription()) + PAGE_START.length());
+		html.append(PAGE_START);
+		renderNews(news, isAggregated, html);
+		return html.toString();
+	}
+
+	private static void renderNews(News news, boolean isAggregated, StringBuilder html) {
+		html.append(NEWS_START).append(LINK_START);
+		escape(news.getLink(), html);
+		html.append(LINK_MIDDLE);
+		escape(news.getTitle(), html);
+		html.append(LINK_END);
+		if (news.hasDate()) {
+			html.append(DATE_START).append(news.getDate()).append(DATE_END);
+		}
+		html.append(LINE_BREAK);
+		if (isAggregated == true) {
+			html.append(SOURCE_START);
+			escape(news.getChannel(), html);
+			html.append(LINE_BREAK);
+		}
+		escape(news.getDescription(), html);
+		html.append(NEWS_DETAIL_END);
+	}
+
+	/**
+	 * Appends the text with HTML special characters replaced by entities.
+	 * Null is treated as an empty String.
+	 * 
+	 * @param text Text to escape.
+	 * @param html Buffer to append to.
+	 */
+	public static void escape(String text, StringBuilder html) {
+		if (text == null) return;
+
+		int length = text.length();
+		int start = 0;
+		for (int i = 0; i < length; i++) {
+			String entity;
+			switch (text.charAt(i)) {
+				case '&': entity = "&amp;"; break;
+				case '<': entity = "&lt;"; break;
+				case '>': entity = "&gt;"; break;
+				case '"': entity = "&quot;"; break;
+				case '\'': entity = "&#39;"; break;
+				default: continue;
+			}
+			// copy the whole run of safe characters at once
+			html.append(text, start, i).append(entity);
+			start = i + 1;
+		}
+		html.append(text, start, length);
+	}
+
+	/**
+	 * @param title Title of the page.
+	 * @param content News to format.
+	 * @return Expected length of the rendered page.
+	 */
+	private static int estimateLength(String title, List<News> content) {
+		long length = HEADER_START.length() + HEADER_END.length() + length(title);
+		for (News news : content) {
+			length += NEWS_OVERHEAD + length(news.getLink()) + length(news.getTitle()) + DATE_LENGTH
+					+ length(news.getChannel()) + length(news.getDescription());
+		}
+		return (int) Math.min(Integer.MAX_VALUE - 8, (long) (length * ESCAPE_MARGIN));
+	}
+
+	private static int length(String text) {
+		return text == null ? 0 : text.length();
+	}
+}
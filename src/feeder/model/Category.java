@@ -2,18 +2,19 @@ package feeder.model;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-
-import com.rometools.rome.feed.module.DCModule;
-import com.rometools.rome.feed.module.Module;
-import com.rometools.rome.feed.synd.SyndEntry;
-import com.rometools.rome.feed.synd.SyndFeed;
-import com.rometools.rome.feed.synd.SyndFeedImpl;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <b>Category</b> represents folder/parent of Channel or multiple Channels.
@@ -26,8 +27,21 @@ import com.rometools.rome.feed.synd.SyndFeedImpl;
 public class Category implements Serializable {
 	private static final long serialVersionUID = 1L;
 	private String name;
-	private Integer index = null;
+	// changed on the Event Dispatch Thread, read by the threads fetching and aggregating the feeds
 	private Map<String, Channel> channels;
+	// merged content of all the Channels, built again only after one of them changes
+	private transient volatile Channel aggregated;
+	private transient long version = 0;
+
+	// shared by all categories, so opening many of them doesn't multiply the number of connections
+	private static final int FETCH_THREADS = 16;
+	private static final ExecutorService FETCH_POOL = Executors.newFixedThreadPool(FETCH_THREADS, new ThreadFactory() {
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "feeder-fetch");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
 
 	/**
 	 * Constructor. Creates Map object containing related Channels.
@@ -35,7 +49,7 @@ public class Category implements Serializable {
 	 * @param name Name of the category visible in the tree.
 	 */
 	public Category(String name) {
-		channels = new HashMap<String, Channel>();
+		channels = new ConcurrentHashMap<String, Channel>();
 		this.name = name;
 	}
 
@@ -46,43 +60,187 @@ public class Category implements Serializable {
 	 */
 	public void addChannel(Channel channel) {
 		channels.put(channel.getName(), channel);
+		channel.setCategory(this);
+		invalidate();
+	}
+
+	/**
+	 * Removes the Channel from the map of channels.
+	 * 
+	 * @param name Name of the Channel to remove.
+	 * @return Removed Channel, null if there was none.
+	 */
+	public Channel removeChannel(String name) {
+		Channel channel = channels.remove(name);
+		if (channel != null) {
+			channel.setCategory(null);
+			invalidate();
+		}
+		return channel;
+	}
+
+	/**
+	 * Drops the cached aggregated feed. Called by the Channels whenever their content changes.
+	 */
+	synchronized void invalidate() {
+		version++;
+		aggregated = null;
+	}
+
+	/**
+	 * Listener notified each time one of the Channels finishes its refresh,
+	 * so the caller can display partial results before the whole Category is ready.
+	 */
+	public interface RefreshListener {
+		/**
+		 * Called on the thread which requested the aggregated feed.
+		 * 
+		 * @param channel Channel which has just been refreshed.
+		 */
+		void channelRefreshed(Channel channel);
 	}
 
 	/**
 	 * Aggregates feeds from all Channels belonging to the Category and
-	 * sorts them by date of publication.
+	 * merges them by date of publication. All Channels are refreshed in parallel
+	 * on a bounded pool of threads - the merge waits for each of them at most
+	 * for the fetch timeout, Channels that didn't answer in time contribute
+	 * the content they had before.
 	 * 
 	 * @return Channel object with isAggregated field set to true containing news from all belonging channels.
+	 * @see Channel#getTimeout()
 	 */
 	public Channel getAggregatedFeed() {
-		SyndFeed feed = new SyndFeedImpl();
-		List<SyndEntry> entries = new ArrayList<SyndEntry>();
-
-		feed.setFeedType("rss_2.0");
-		feed.setTitle(getName());
-		feed.setDescription(getName() + " - wszystkie nagłówki");
-		feed.setEntries(entries);
-
-		for(Entry<String, Channel> channelEntry : channels.entrySet()) {
-			Channel channel = channelEntry.getValue();
-			SyndFeed subFeed = channel.getFeedInput();
-
-			// adds note from which category each entry comes
-			for (SyndEntry entry : subFeed.getEntries()) {
-				Module dcModule = entry.getModule(DCModule.URI);
-				((DCModule)dcModule).setCreator(channel.getName());
-				entries.add(entry);
+		return getAggregatedFeed(null);
+	}
+
+	/**
+	 * Same as {@link #getAggregatedFeed()}, but reports every refreshed Channel to the listener.
+	 * 
+	 * @param listener Listener to notify, may be null.
+	 * @return Channel object with isAggregated field set to true containing news from all belonging channels.
+	 */
+	public Channel getAggregatedFeed(final RefreshListener listener) {
+		refreshChannels(listener);
+		return aggregate();
+	}
+
+	/**
+	 * Merges the current content of all Channels without refreshing them.
+	 * 
+	 * @return Channel object with isAggregated field set to true containing news from all belonging channels.
+	 */
+	public Channel aggregate() {
+		Channel cached = aggregated;
+		if (cached != null) return cached;
+
+		long builtVersion;
+		synchronized (this) {
+			builtVersion = version;
+		}
+		// merged without the lock, Channels converting their feeds mustn't wait for us
+		Channel result = merge(0);
+		synchronized (this) {
+			// a Channel changed in the meantime, the result is already outdated
+			if (version == builtVersion) {
+				aggregated = result;
 			}
 		}
+		return result;
+	}
 
-		// custom Comparator - sorts entries by date (descending)
-		Collections.sort(entries, new Comparator<SyndEntry> () {
-			public int compare(SyndEntry firstEntry, SyndEntry secondEntry) {
-				return secondEntry.getPublishedDate().compareTo(firstEntry.getPublishedDate());
-			}
-		});
+	/**
+	 * Merges the current content of all Channels without refreshing them.
+	 * Every Channel keeps its news sorted, so they are merged, not sorted again,
+	 * and with a limit the merge stops as soon as the first page is ready.
+	 * A story published by several Channels is shown only once. The whole feed is built
+	 * once and cached until one of the Channels changes, so it's immutable and can be shared.
+	 * 
+	 * @param limit Maximum number of news, 0 for all of them.
+	 * @return Channel object with isAggregated field set to true containing news from all belonging channels.
+	 */
+	public Channel aggregate(final int limit) {
+		if (limit <= 0) return aggregate();
+
+		Channel cached = aggregated;
+		if (cached != null) {
+			List<News> content = cached.getCurrentContent();
+			return content.size() <= limit ? cached : new Channel(getName(), content.subList(0, limit));
+		}
+		return merge(limit);
+	}
+
+	private Channel merge(final int limit) {
+		List<Channel> current = getChannels();
+		List<List<News>> contents = new ArrayList<List<News>>(current.size());
+		for (Channel channel : current) {
+			contents.add(channel.getCurrentContent());
+		}
+
+		return new Channel(getName(), NewsMerger.merge(contents, limit, true));
+	}
 
-		return new Channel(feed);
+	/**
+	 * Refreshes all Channels of the Category at the same time and waits until
+	 * each of them finishes or the fetch timeout passes, whichever comes first.
+	 * Channels of one server wait in its queue of the {@link HostScheduler},
+	 * so a slow or throttling server doesn't occupy the threads meant for the others.
+	 * Failed Channels keep their previous content. Late Channels are skipped too,
+	 * but their queues keep draining in the background, so the Channels queued
+	 * behind a slow server are still refreshed and ready for the next view.
+	 * Interrupting the calling thread cancels all the fetches still in progress.
+	 * 
+	 * @param listener Listener to notify about each refreshed Channel, may be null.
+	 */
+	private void refreshChannels(final RefreshListener listener) {
+		final BlockingQueue<Future<Channel>> completed = new LinkedBlockingQueue<Future<Channel>>();
+		HostScheduler scheduler = new HostScheduler();
+		for (final Channel channel : getChannels()) {
+			FutureTask<Channel> fetch = new FutureTask<Channel>(new Callable<Channel>() {
+				public Channel call() throws Exception {
+					channel.refreshIfStale();
+					return channel;
+				}
+			}) {
+				@Override
+				protected void done() {
+					completed.add(this);
+				}
+			};
+			scheduler.add(channel.getUrl(), fetch);
+		}
+		List<Future<?>> workers = scheduler.start(FETCH_POOL);
+
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Channel.getTimeout());
+		boolean interrupted = false;
+		try {
+			for (int i = 0; i < scheduler.size(); i++) {
+				Future<Channel> fetch = completed.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+				if (fetch == null) break; // the rest is too slow
+
+				try {
+					Channel channel = fetch.get();
+					if (listener != null) {
+						listener.channelRefreshed(channel);
+					}
+				}
+				catch (ExecutionException e) {
+					// channel is broken - we show what we have
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			interrupted = true;
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			// nobody is waiting anymore, the Channels still in the queues are never fetched
+			if (interrupted) {
+				for (Future<?> worker : workers) {
+					worker.cancel(true);
+				}
+			}
+		}
 	}
 
 	/**
@@ -93,6 +251,13 @@ public class Category implements Serializable {
 		return channels.get(name);
 	}
 
+	/**
+	 * @return Copy of the belonging Channels, safe to iterate on any thread.
+	 */
+	public List<Channel> getChannels() {
+		return new ArrayList<Channel>(channels.values());
+	}
+
 	/**
 	 * @return The Map of belonging Channels.
 	 */
@@ -112,23 +277,6 @@ public class Category implements Serializable {
 	 */
 	public void setName(String newName) {
 		name = newName;
-	}
-
-	/**
-	 * This getter is used to manage items in JTree.
-	 * 
-	 * @return Index number in Map of Categories in Model.
-	 */
-	public Integer getIndex() {
-		return index;
-	}
-
-	/**
-	 * This setter is used to manage items in JTree.
-	 * 
-	 * @param index Index number to set in Map of Categories in Model.
-	 */
-	public void setIndex(Integer index) {
-		this.index = index;
+		invalidate();
 	}
 }
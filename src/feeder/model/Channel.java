@@ -1,19 +1,26 @@
 package feeder.model;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.Serializable;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
-import com.rometools.rome.feed.module.DCModule;
-import com.rometools.rome.feed.module.Module;
+import com.rometools.rome.feed.WireFeed;
 import com.rometools.rome.feed.synd.SyndEntry;
 import com.rometools.rome.feed.synd.SyndFeed;
+import com.rometools.rome.feed.synd.SyndFeedImpl;
 import com.rometools.rome.io.FeedException;
-import com.rometools.rome.io.SyndFeedInput;
+import com.rometools.rome.io.WireFeedInput;
 import com.rometools.rome.io.XmlReader;
 
 /**
@@ -28,11 +35,39 @@ import com.rometools.rome.io.XmlReader;
  */
 public class Channel implements Serializable {
 	private static final long serialVersionUID = 1L;
+	/** Number of failed fetches in a row after which the Channel stops fetching for a while. */
+	public static final int FAILURE_LIMIT = 3;
+	private static final long MIN_PAUSE = TimeUnit.MINUTES.toMillis(1);
+	private static final long MAX_PAUSE = TimeUnit.HOURS.toMillis(1);
 	private String name;
 	private URL url;
-	private SyndFeed feed;
+	private volatile SyndFeed feed;
+	private transient volatile List<News> content;
+	private String etag;
+	private String lastModified;
+	private int ttl = 0;
+	private List<Integer> skipHours = Collections.emptyList();
+	private List<String> skipDays = Collections.emptyList();
+	private transient volatile long lastFetchTime = 0;
+	private transient volatile long maxAge = 0;
+	private transient volatile Model owner;
+	private transient volatile Category category;
+	private transient volatile ChannelMetrics metrics;
+	// one fetch at a time, the Channel itself is locked only to publish its result
+	private transient volatile Object fetchLock;
+	// entries of the last refresh which weren't there before, for the journal
+	private transient volatile List<SyndEntry> newEntries;
+	// the feed has only the entries replayed from the journal, the ones from the snapshot are still to come
+	private transient boolean isJournaled = false;
+	// failed fetches in a row and when a broken Channel may try again
+	private transient volatile int failures = 0;
+	private transient volatile long retryTime = 0;
 	private final boolean isAggregated;
-	private Integer index = null;
+	private static int timeout = 10000;
+	private static int previewLength = 0;
+	private static volatile FeedCache cache = null;
+	private static volatile FeedFetcher fetcher = new FeedFetcher();
+	private static volatile boolean streamingParser = true;
 
 	/**
 	 * Class constructor for URL-based feeds (so the ones that user is adding).
@@ -47,66 +82,682 @@ public class Channel implements Serializable {
 	public Channel(final String name, final String url) throws IllegalArgumentException, FeedException, IOException {
 		this.name = name;
 		this.url = new URL(url);
-		feed = new SyndFeedInput().build(new XmlReader(this.url));
+		isAggregated = false;
+		refresh();
+	}
+
+	/**
+	 * Class constructor for Channels restored from disk - doesn't touch the network,
+	 * the content is fetched on the first refresh.
+	 * 
+	 * @param name Name of the Channel.
+	 * @param url URL of the XML file.
+	 * @see ModelStore
+	 */
+	Channel(final String name, final URL url) {
+		this.name = name;
+		this.url = url;
 		isAggregated = false;
 	}
 
 	/**
 	 * Class constructor for aggregated feeds (so the one for whole Category).
 	 * 
-	 * @param feed	SyndFeed aggregated by Category class method.
+	 * @param name Name of the Category.
+	 * @param content News merged by Category class method, sorted by date.
 	 * @see Category#getAggregatedFeed()
 	 */
-	public Channel(final SyndFeed feed) {
-		this.feed = feed;
-		this.name = feed.getTitle();
+	public Channel(final String name, final List<News> content) {
+		this.name = name;
+		this.content = Collections.unmodifiableList(content);
 		isAggregated = true;
 	}
 
 	/**
-	 * Cleans up all the entries from SyndFeed feed, packs each
-	 * of them to the News container class and then makes a List of them.
+	 * Returns the List of News, refreshing the feed first if it's not fresh.
 	 * 
-	 * @return List of News.
+	 * @return List of News sorted by date, newest first.
 	 * @throws IOException Thrown when the URL is corrupted.
 	 * @throws FeedException Thrown when ROME couldn't create the SyndFeed.
 	 * @throws IllegalArgumentException Thrown when the URL given content isn't in XML format.
+	 * @see #getCurrentContent()
 	 */
 	public List<News> getChannelContent() throws IllegalArgumentException, FeedException, IOException {
 		// we need this so that the channel refreshes itself on each visit
 		// sadly the ROME library doesn't have any "refresh" method or I couldn't find any
 		if (isAggregated == false) {
-			feed = new SyndFeedInput().build(new XmlReader(this.url));
+			refreshIfStale();
+		}
+
+		return getCurrentContent();
+	}
+
+	/**
+	 * Returns the List of News from the last fetch without touching the network.
+	 * The List is built and sorted only once per fetch and must not be modified.
+	 * 
+	 * @return List of News sorted by date, newest first.
+	 */
+	public List<News> getCurrentContent() {
+		List<News> current = content;
+		if (current == null) {
+			synchronized (this) {
+				if (content == null) {
+					content = convertFeed(feed);
+				}
+				current = content;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * Cleans up all the entries from SyndFeed feed, packs each
+	 * of them to the News container class and then makes a sorted List of them.
+	 * 
+	 * @param feed Feed to convert, may be null.
+	 * @return Unmodifiable List of News.
+	 */
+	private List<News> convertFeed(final SyndFeed feed) {
+		if (feed == null) {
+			return Collections.emptyList();
 		}
 
-		List<News> content = new ArrayList<News>();
+		List<News> content = new ArrayList<News>(feed.getEntries().size());
+		HtmlStripper stripper = new HtmlStripper(previewLength);
 
 		for(SyndEntry entry : feed.getEntries()) {
 			News news = new News();
 
 			news.setTitle(entry.getTitle());
 			news.setLink(entry.getLink());
+			news.setGuid(entry.getUri());
 			if (entry.getPublishedDate() != null) {
-				SimpleDateFormat dateFormat = new SimpleDateFormat("dd.MM.yyyy, HH:mm");
-				news.setDate(dateFormat.format(entry.getPublishedDate()));
+				news.setPublishedTime(entry.getPublishedDate().getTime());
 			}
 			if (entry.getDescription() != null) {
-				news.setDescription(entry.getDescription().getValue().trim().replaceAll("\\<.*?\\>", ""));
-			}
-			// adds the source of the news, but only for aggregated feeds so we can identify the source
-			if (isAggregated == true) {
-				Module dcModule = entry.getModule(DCModule.URI);
-				news.setChannel(((DCModule)dcModule).getCreator());
+				news.setDescription(stripper.strip(entry.getDescription().getValue()));
 			}
+			// the source of the news, so we can identify it in aggregated feeds
+			news.setChannel(name);
 
 			content.add(news);
 		}
 
-		return content;
+		NewsMerger.sort(content);
+		return Collections.unmodifiableList(content);
+	}
+
+	/**
+	 * Downloads and parses the XML file again. The new SyndFeed replaces the old one
+	 * only after it was built completely, so the Channel can be read by other threads
+	 * (e.g. Category aggregating its feeds) while the refresh is in progress.
+	 * The Channel is locked only while the result is published, so renaming it
+	 * or reading its content never waits for the network.
+	 * For HTTP feeds the request is conditional (ETag and Last-Modified validators
+	 * from the previous response are sent), so when the server answers
+	 * 304 Not Modified neither the download nor the parsing happens. The feed is downloaded
+	 * by the shared {@link FeedFetcher} - compressed and over a reused connection.
+	 * <p>
+	 * After {@link #FAILURE_LIMIT} failed fetches in a row the Channel is broken: it stops
+	 * fetching and fails right away, keeping its last good content, until a pause passes.
+	 * Then a single fetch tries again - if it fails too, the next pause is twice as long
+	 * (from a minute up to an hour, with jitter). So a dead feed costs nothing to the views
+	 * which include it, and a feed which comes back is picked up on its own.
+	 * 
+	 * @return Number of entries which weren't there before the refresh.
+	 * @throws IOException Thrown when the URL is corrupted or the connection timed out.
+	 * @throws FeedFetcher.RetryLaterException Thrown when the Channel is broken and its pause hasn't passed yet.
+	 * @throws FeedException Thrown when ROME couldn't create the SyndFeed.
+	 * @throws IllegalArgumentException Thrown when the URL given content isn't in XML format.
+	 */
+	public int refresh() throws IllegalArgumentException, FeedException, IOException {
+		// before the fetch lock, so nobody waits for the fetch which tries again
+		checkBroken();
+		boolean wasBroken = isBroken();
+		Model owner = this.owner;
+		try {
+			synchronized (getFetchLock()) {
+				int newEntries = fetch();
+				// outside of the Channel lock, listeners may need to lock the Model, but still
+				// under the fetch lock, so they get the new entries of this very refresh
+				if (newEntries > 0 && owner != null) {
+					owner.fireEntriesUpdated(this);
+				}
+				return newEntries;
+			}
+		}
+		finally {
+			if (isBroken() != wasBroken && owner != null) {
+				owner.fireStatusChanged(this);
+			}
+		}
+	}
+
+	private int fetch() throws IllegalArgumentException, FeedException, IOException {
+		synchronized (getFetchLock()) {
+			checkBroken();
+			if (isBroken()) {
+				// others fail right away while we try, as if it has already failed again
+				retryTime = System.currentTimeMillis() + pause(failures + 1);
+			}
+			ChannelMetrics.Sample sample = getMetrics().start();
+			try {
+				int newEntries = fetch(sample);
+				failures = 0;
+				return newEntries;
+			}
+			catch (IllegalArgumentException | FeedException | IOException e) {
+				sample.failed(e);
+				// a throttling server or a fetch cancelled while waiting for it doesn't mean the feed is broken
+				if (!(e instanceof FeedFetcher.RetryLaterException)
+						&& !(e instanceof InterruptedIOException && !(e instanceof SocketTimeoutException))) {
+					failures++;
+					if (isBroken()) {
+						retryTime = System.currentTimeMillis() + pause(failures);
+					}
+				}
+				throw e;
+			}
+		}
+	}
+
+	private Object getFetchLock() {
+		Object lock = fetchLock;
+		if (lock == null) {
+			synchronized (this) {
+				if (fetchLock == null) {
+					fetchLock = new Object();
+				}
+				lock = fetchLock;
+			}
+		}
+		return lock;
+	}
+
+	private void checkBroken() throws FeedFetcher.RetryLaterException {
+		long retry = retryTime;
+		if (isBroken() && System.currentTimeMillis() < retry) {
+			throw new FeedFetcher.RetryLaterException("Kanał " + name + " nie działa", 0, retry);
+		}
+	}
+
+	/**
+	 * @return Pause after the given number of failures in a row, doubled after each one past the limit.
+	 */
+	private static long pause(final int failures) {
+		long pause = Math.min(MAX_PAUSE, MIN_PAUSE << Math.min(Math.max(0, failures - FAILURE_LIMIT), 16));
+		// Channels broken by the same outage don't all try again at the same moment
+		return pause / 2 + (long) (ThreadLocalRandom.current().nextDouble() * pause / 2);
+	}
+
+	private int fetch(final ChannelMetrics.Sample sample) throws IllegalArgumentException, FeedException, IOException {
+		URL address;
+		String etag;
+		String lastModified;
+		synchronized (this) {
+			address = url;
+			// validators make sense only if we still have the content they describe
+			etag = feed != null ? this.etag : null;
+			lastModified = feed != null ? this.lastModified : null;
+		}
+
+		FeedFetcher.Response response = fetcher.fetch(address, etag, lastModified, timeout, sample);
+		try {
+			if (response.isNotModified()) {
+				synchronized (this) {
+					if (address.equals(url)) {
+						lastFetchTime = System.currentTimeMillis();
+					}
+				}
+				sample.notModified();
+				return 0;
+			}
+
+			// the body is copied to the disk cache while it's being parsed
+			FeedCache cache = Channel.cache;
+			InputStream body = response.getBody();
+			FeedCache.Writer cached = null;
+			WireFeed wireFeed;
+			try {
+				if (cache != null) {
+					cached = cache.put(address.toString(), body);
+					body = cached;
+				}
+				sample.parsing();
+				wireFeed = parse(body, response.getContentType());
+			}
+			catch (IllegalArgumentException | FeedException | IOException e) {
+				if (cached != null) {
+					cached.abort();
+				}
+				throw e;
+			}
+
+			SyndFeed newFeed = new SyndFeedImpl(wireFeed, false);
+			SyndFeed oldFeed = null;
+			boolean isCurrent;
+			synchronized (this) {
+				// the address changed in the meantime, the feed belongs to the old one
+				isCurrent = address.equals(url);
+				if (isCurrent) {
+					readSchedulingHints(wireFeed);
+					oldFeed = feed;
+					feed = newFeed;
+					content = null;
+					contentChanged();
+					newEntries = findNewEntries(oldFeed, newFeed);
+					isJournaled = false;
+					this.etag = response.getEtag();
+					this.lastModified = response.getLastModified();
+					lastFetchTime = System.currentTimeMillis();
+				}
+			}
+			if (!isCurrent) {
+				if (cached != null) {
+					cached.abort();
+				}
+				return 0;
+			}
+			if (cached != null) {
+				cached.commit(response.getEtag(), response.getLastModified());
+			}
+			sample.parsed(newFeed.getEntries().size());
+
+			return newEntries.size();
+		}
+		finally {
+			response.close();
+		}
+	}
+
+	/**
+	 * Loads the feed from the disk cache, so it can be shown before it's fetched.
+	 * Does nothing if the Channel already has a feed. The Channel is still
+	 * considered stale, so the next refresh revalidates it.
+	 * 
+	 * @return True if the feed was loaded from the cache.
+	 * @see #setCache(FeedCache)
+	 */
+	public boolean loadFromCache() {
+		FeedCache cache = Channel.cache;
+		if (feed != null || cache == null || isAggregated) return false;
+
+		FeedCache.Entry entry = cache.get(getUrl());
+		if (entry == null) return false;
+
+		try {
+			InputStream body = entry.openBody();
+			try {
+				WireFeed wireFeed = parse(body, null);
+				synchronized (this) {
+					if (feed != null) return false;
+					readSchedulingHints(wireFeed);
+					feed = new SyndFeedImpl(wireFeed, false);
+					content = null;
+					contentChanged();
+					if (etag == null && lastModified == null) {
+						etag = entry.getEtag();
+						lastModified = entry.getLastModified();
+					}
+				}
+				return true;
+			}
+			finally {
+				body.close();
+			}
+		}
+		catch (IllegalArgumentException | FeedException | IOException e) {
+			// broken cache file, the feed will be fetched
+			return false;
+		}
+	}
+
+	private static WireFeed parse(final InputStream body, final String contentType) throws IllegalArgumentException, FeedException, IOException {
+		if (streamingParser) {
+			return StreamingFeedParser.parse(body, contentType);
+		}
+		XmlReader reader = contentType != null ? new XmlReader(body, contentType, true) : new XmlReader(body, true);
+		return new WireFeedInput().build(reader);
+	}
+
+	/**
+	 * Refreshes the Channel unless it was refreshed recently enough.
+	 * 
+	 * @return Number of entries which weren't there before the refresh, 0 if the Channel was fresh.
+	 * @throws IOException Thrown when the URL is corrupted or the connection timed out.
+	 * @throws FeedException Thrown when ROME couldn't create the SyndFeed.
+	 * @throws IllegalArgumentException Thrown when the URL given content isn't in XML format.
+	 * @see #setMaxAge(long)
+	 */
+	public int refreshIfStale() throws IllegalArgumentException, FeedException, IOException {
+		return isFresh() ? 0 : refresh();
+	}
+
+	/**
+	 * @return True if the content was fetched less than max age ago.
+	 */
+	public boolean isFresh() {
+		return feed != null && maxAge > 0 && System.currentTimeMillis() - lastFetchTime < maxAge;
 	}
 
 	/**
-	 * @return SyndFeed object.
+	 * RSS 2.0 feeds can tell how often they should be fetched (ttl)
+	 * and when they shouldn't be fetched at all (skipHours, skipDays).
+	 */
+	private void readSchedulingHints(final WireFeed wireFeed) {
+		if (wireFeed instanceof com.rometools.rome.feed.rss.Channel) {
+			com.rometools.rome.feed.rss.Channel rss = (com.rometools.rome.feed.rss.Channel) wireFeed;
+			ttl = Math.max(0, rss.getTtl());
+			skipHours = new ArrayList<Integer>(rss.getSkipHours());
+			skipDays = new ArrayList<String>(rss.getSkipDays());
+		}
+		else {
+			ttl = 0;
+			skipHours = Collections.emptyList();
+			skipDays = Collections.emptyList();
+		}
+	}
+
+	private static List<SyndEntry> findNewEntries(final SyndFeed oldFeed, final SyndFeed newFeed) {
+		if (oldFeed == null) {
+			return Collections.unmodifiableList(new ArrayList<SyndEntry>(newFeed.getEntries()));
+		}
+
+		Set<String> known = new HashSet<String>();
+		for (SyndEntry entry : oldFeed.getEntries()) {
+			known.add(entryKey(entry));
+		}
+		List<SyndEntry> added = new ArrayList<SyndEntry>();
+		for (SyndEntry entry : newFeed.getEntries()) {
+			if (!known.contains(entryKey(entry))) {
+				added.add(entry);
+			}
+		}
+		return Collections.unmodifiableList(added);
+	}
+
+	/**
+	 * @return Entries the last refresh brought, the ones {@link ModelListener#entriesUpdated(String, Channel)}
+	 *         is about, null if there was no refresh yet.
+	 */
+	List<SyndEntry> getNewEntries() {
+		return newEntries;
+	}
+
+	/**
+	 * New entries put in front of the feed. Entries which are already in the feed aren't repeated.
+	 */
+	private static SyndFeed addEntries(final SyndFeed feed, final List<SyndEntry> added) {
+		SyndFeed result = new SyndFeedImpl();
+		result.setFeedType(feed != null ? feed.getFeedType() : "rss_2.0");
+		result.setTitle(feed != null ? feed.getTitle() : null);
+		List<SyndEntry> old = feed != null ? feed.getEntries() : Collections.<SyndEntry>emptyList();
+		List<SyndEntry> entries = new ArrayList<SyndEntry>(added.size() + old.size());
+		Set<String> keys = new HashSet<String>();
+		for (SyndEntry entry : added) {
+			if (keys.add(entryKey(entry))) {
+				entries.add(entry);
+			}
+		}
+		for (SyndEntry entry : old) {
+			if (keys.add(entryKey(entry))) {
+				entries.add(entry);
+			}
+		}
+		result.setEntries(entries);
+		return result;
+	}
+
+	private static String entryKey(final SyndEntry entry) {
+		if (entry.getUri() != null) return entry.getUri();
+		if (entry.getLink() != null) return entry.getLink();
+		return String.valueOf(entry.getTitle());
+	}
+
+	/**
+	 * Sets the feed loaded from disk, unless the Channel has already fetched a newer one.
+	 * The Channel is still considered stale, so the next refresh revalidates it.
+	 * 
+	 * @param restored Feed saved by the previous run of the application.
+	 * @see ModelStore
+	 */
+	synchronized void restoreFeed(final SyndFeed restored) {
+		if (feed == null) {
+			feed = restored;
+			content = null;
+			contentChanged();
+		}
+		else if (isJournaled) {
+			feed = addEntries(restored, feed.getEntries());
+			isJournaled = false;
+			content = null;
+			contentChanged();
+		}
+	}
+
+	/**
+	 * Sets the entries replayed from the journal, unless the Channel has already fetched its feed.
+	 * They are added to the feed loaded from the snapshot later by {@link #restoreFeed(SyndFeed)}.
+	 * 
+	 * @param added Entries journaled after the snapshot, newest first.
+	 * @see ModelJournal
+	 */
+	synchronized void restoreEntries(final List<SyndEntry> added) {
+		if (feed == null) {
+			feed = addEntries(null, added);
+			isJournaled = true;
+			content = null;
+			contentChanged();
+		}
+	}
+
+	/**
+	 * @param category Category the Channel belongs to, null if removed.
+	 */
+	void setCategory(final Category category) {
+		this.category = category;
+	}
+
+	/**
+	 * Tells the Category that its aggregated feed has to be built again.
+	 */
+	private void contentChanged() {
+		Category current = category;
+		if (current != null) {
+			current.invalidate();
+		}
+	}
+
+	/**
+	 * @param owner Model to which the Channel belongs and which is notified about new entries.
+	 */
+	void setOwner(final Model owner) {
+		this.owner = owner;
+	}
+
+	/**
+	 * @return ETag header of the last response, null if there was none.
+	 */
+	String getEtag() {
+		return etag;
+	}
+
+	/**
+	 * @return Last-Modified header of the last response, null if there was none.
+	 */
+	String getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Restores the state of the Channel saved by the previous run of the application.
+	 * 
+	 * @param etag ETag header of the last response.
+	 * @param lastModified Last-Modified header of the last response.
+	 * @param ttl Time to live declared by the feed in minutes.
+	 * @param skipHours Hours in which the feed asks not to be fetched.
+	 * @param skipDays Days on which the feed asks not to be fetched.
+	 * @see ModelStore
+	 */
+	synchronized void restoreState(final String etag, final String lastModified, final int ttl,
+			final List<Integer> skipHours, final List<String> skipDays) {
+		this.etag = etag;
+		this.lastModified = lastModified;
+		this.ttl = ttl;
+		this.skipHours = skipHours;
+		this.skipDays = skipDays;
+	}
+
+	/**
+	 * @return Connect and read timeout of a single fetch in milliseconds.
+	 */
+	public static int getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * @param timeout Connect and read timeout of a single fetch in milliseconds.
+	 */
+	public static void setTimeout(final int timeout) {
+		Channel.timeout = timeout;
+	}
+
+	/**
+	 * @return True if RSS 2.0 and Atom feeds are parsed with StAX, false if everything goes through ROME.
+	 */
+	public static boolean isStreamingParser() {
+		return streamingParser;
+	}
+
+	/**
+	 * @param streamingParser True to parse RSS 2.0 and Atom feeds with StAX, false to use ROME only.
+	 * @see StreamingFeedParser
+	 */
+	public static void setStreamingParser(final boolean streamingParser) {
+		Channel.streamingParser = streamingParser;
+	}
+
+	/**
+	 * @return Fetcher which downloads the feeds of all Channels.
+	 */
+	public static FeedFetcher getFetcher() {
+		return fetcher;
+	}
+
+	/**
+	 * @param fetcher Fetcher which downloads the feeds of all Channels.
+	 */
+	public static void setFetcher(final FeedFetcher fetcher) {
+		Channel.fetcher = fetcher;
+	}
+
+	/**
+	 * @return Disk cache of fetched feeds, null if disabled.
+	 */
+	public static FeedCache getCache() {
+		return cache;
+	}
+
+	/**
+	 * @param cache Disk cache for fetched feeds, null to disable it.
+	 */
+	public static void setCache(final FeedCache cache) {
+		Channel.cache = cache;
+	}
+
+	/**
+	 * @return Maximum length of News description, 0 if descriptions are not shortened.
+	 */
+	public static int getPreviewLength() {
+		return previewLength;
+	}
+
+	/**
+	 * @param previewLength Maximum length of News description, 0 to show whole descriptions.
+	 */
+	public static void setPreviewLength(final int previewLength) {
+		Channel.previewLength = previewLength;
+	}
+
+	/**
+	 * @return Time to live declared by the feed in minutes, 0 if not declared.
+	 */
+	public int getTtl() {
+		return ttl;
+	}
+
+	/**
+	 * @return Hours (0-23, GMT) in which the feed asks not to be fetched.
+	 */
+	public List<Integer> getSkipHours() {
+		// null in Channels saved before the field existed
+		return skipHours != null ? skipHours : Collections.<Integer>emptyList();
+	}
+
+	/**
+	 * @return Days (e.g. "Monday") on which the feed asks not to be fetched.
+	 */
+	public List<String> getSkipDays() {
+		return skipDays != null ? skipDays : Collections.<String>emptyList();
+	}
+
+	/**
+	 * @return Time of the last successful fetch in milliseconds since the epoch, 0 if not fetched yet.
+	 */
+	public long getLastFetchTime() {
+		return lastFetchTime;
+	}
+
+	/**
+	 * @return True if the last {@link #FAILURE_LIMIT} or more fetches failed and the Channel pauses fetching.
+	 */
+	public boolean isBroken() {
+		return failures >= FAILURE_LIMIT;
+	}
+
+	/**
+	 * @return Time (milliseconds since the epoch) when a broken Channel tries to fetch again.
+	 */
+	public long getRetryTime() {
+		return retryTime;
+	}
+
+	/**
+	 * @return For how long (in milliseconds) fetched content is considered fresh, 0 if never.
+	 */
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * When the Channel is refreshed in the background, viewing it doesn't need to
+	 * fetch it again as long as the content is younger than max age.
+	 * 
+	 * @param maxAge For how long (in milliseconds) fetched content is considered fresh, 0 if never.
+	 */
+	public void setMaxAge(final long maxAge) {
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * @return Measurements of the fetches of the Channel.
+	 */
+	public ChannelMetrics getMetrics() {
+		ChannelMetrics current = metrics;
+		if (current == null) {
+			synchronized (this) {
+				if (metrics == null) {
+					metrics = new ChannelMetrics();
+				}
+				current = metrics;
+			}
+		}
+		return current;
+	}
+
+	/**
+	 * @return SyndFeed object, null for aggregated Channels.
 	 */
 	public SyndFeed getFeedInput() {
 		return feed;
@@ -122,8 +773,13 @@ public class Channel implements Serializable {
 	/**
 	 * @param newName New name for the Channel.
 	 */
-	public void setName(final String newName) {
+	public synchronized void setName(final String newName) {
 		name = newName;
+		// news carry the name of their source
+		if (!isAggregated) {
+			content = null;
+			contentChanged();
+		}
 	}
 
 	/**
@@ -137,8 +793,15 @@ public class Channel implements Serializable {
 	 * @param url New URL for the Channel.
 	 * @throws MalformedURLException Thrown when the URL is not in a valid format.
 	 */
-	public void setUrl(final String url) throws MalformedURLException {
+	public synchronized void setUrl(final String url) throws MalformedURLException {
 		this.url = new URL(url);
+		// validators and freshness belong to the old address
+		etag = null;
+		lastModified = null;
+		lastFetchTime = 0;
+		// the new address gets a chance right away
+		failures = 0;
+		retryTime = 0;
 	}
 
 	/**
@@ -147,22 +810,4 @@ public class Channel implements Serializable {
 	public boolean isAggregated() {
 		return isAggregated;
 	}
-
-	/**
-	 * This getter is used to manage items in JTree.
-	 * 
-	 * @return Index number in Map of Channels for specific Category.
-	 */
-	public Integer getIndex() {
-		return index;
-	}
-
-	/**
-	 * This setter is used to manage items in JTree.
-	 * 
-	 * @param index Index number in Map of Channels for specific Category to set.
-	 */
-	public void setIndex(final Integer index) {
-		this.index = index;
-	}
 }
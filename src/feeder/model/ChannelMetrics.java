@@ -0,0 +1,281 @@
+package feeder.model;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+
+/**
+ * <b>ChannelMetrics</b> measures what each fetch of a Channel costs - resolving the host,
+ * connecting, downloading and parsing - together with the size of the feed, its number
+ * of entries, the HTTP status and the errors, so slow, big and failing feeds can be found.
+ * Download and parsing overlap (the feed is parsed while it's read), so the download time
+ * is the time spent waiting for the network and the parse time is the rest.
+ *
+ * @version	1.0
+ * @see MetricsRegistry
+ */
+public class ChannelMetrics implements ChannelMetricsMXBean {
+	// fetches covered by the histograms
+	private static final int WINDOW = 100;
+	private final Histogram dnsTime = new Histogram(WINDOW);
+	private final Histogram connectTime = new Histogram(WINDOW);
+	private final Histogram downloadTime = new Histogram(WINDOW);
+	private final Histogram parseTime = new Histogram(WINDOW);
+	private final Histogram fetchTime = new Histogram(WINDOW);
+	private final Histogram renderTime = new Histogram(WINDOW);
+	private final Histogram bytes = new Histogram(WINDOW);
+	private volatile String categoryName;
+	private volatile String channelName;
+	private volatile int entryCount = 0;
+	private volatile int lastStatus = 0;
+	private volatile long fetchCount = 0;
+	private volatile long notModifiedCount = 0;
+	private volatile long errorCount = 0;
+	private volatile String lastError;
+	private volatile long lastErrorTime = 0;
+
+	/**
+	 * Measurements of a single fetch, recorded when it ends. Used by one thread only.
+	 */
+	final class Sample {
+		private final long start = System.nanoTime();
+		private long dns = -1;
+		private long connect = -1;
+		private long parseStart = -1;
+		private int status = 0;
+		private MeteredInputStream body;
+
+		/**
+		 * Resolves the host name, the address is then cached by the JVM for the connection.
+		 */
+		void resolve(final String host) throws IOException {
+			long time = System.nanoTime();
+			InetAddress.getAllByName(host);
+			dns = System.nanoTime() - time;
+		}
+
+		/**
+		 * @param status HTTP status of the response, 0 if it isn't HTTP.
+		 */
+		void responded(final int status) {
+			this.status = status;
+			connect = System.nanoTime() - start - Math.max(0, dns);
+		}
+
+		/**
+		 * @return The body, counting its bytes and the time spent waiting for them.
+		 */
+		InputStream meter(final InputStream body) {
+			this.body = new MeteredInputStream(body);
+			return this.body;
+		}
+
+		void parsing() {
+			parseStart = System.nanoTime();
+		}
+
+		/**
+		 * Records a fetch answered with 304 Not Modified.
+		 */
+		void notModified() {
+			record(this, -1);
+		}
+
+		/**
+		 * @param entries Number of entries in the parsed feed.
+		 */
+		void parsed(final int entries) {
+			record(this, entries);
+		}
+
+		void failed(final Exception e) {
+			recordError(this, e);
+		}
+	}
+
+	/**
+	 * Counts the bytes read and the time spent in reading them.
+	 */
+	private static final class MeteredInputStream extends FilterInputStream {
+		private long bytes = 0;
+		private long time = 0;
+
+		MeteredInputStream(InputStream input) {
+			super(input);
+		}
+
+		@Override
+		public int read() throws IOException {
+			long start = System.nanoTime();
+			int result = super.read();
+			time += System.nanoTime() - start;
+			if (result >= 0) bytes++;
+			return result;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			long start = System.nanoTime();
+			int result = super.read(buffer, offset, length);
+			time += System.nanoTime() - start;
+			if (result > 0) bytes += result;
+			return result;
+		}
+	}
+
+	/**
+	 * @return New measurement of a fetch.
+	 */
+	Sample start() {
+		return new Sample();
+	}
+
+	private synchronized void record(final Sample sample, final int entries) {
+		long end = System.nanoTime();
+		fetchCount++;
+		lastStatus = sample.status;
+		if (sample.dns >= 0) dnsTime.add(millis(sample.dns));
+		if (sample.connect >= 0) connectTime.add(millis(sample.connect));
+		fetchTime.add(millis(end - sample.start));
+		if (entries < 0) {
+			notModifiedCount++;
+			return;
+		}
+
+		long waiting = sample.body != null ? sample.body.time : 0;
+		downloadTime.add(millis(waiting));
+		if (sample.parseStart >= 0) parseTime.add(millis(Math.max(0, end - sample.parseStart - waiting)));
+		if (sample.body != null) bytes.add(sample.body.bytes);
+		entryCount = entries;
+	}
+
+	private synchronized void recordError(final Sample sample, final Exception e) {
+		// a feed which times out is the slowest one of all
+		fetchTime.add(millis(System.nanoTime() - sample.start));
+		if (sample.dns >= 0) dnsTime.add(millis(sample.dns));
+		fetchCount++;
+		errorCount++;
+		lastStatus = sample.status;
+		lastError = e.getClass().getSimpleName() + (e.getMessage() != null ? ": " + e.getMessage() : "");
+		lastErrorTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Records how long it took to show the content of the Channel.
+	 *
+	 * @param nanos Time in nanoseconds.
+	 */
+	public void recordRender(final long nanos) {
+		renderTime.add(millis(nanos));
+	}
+
+	private static double millis(final long nanos) {
+		return nanos / 1e6;
+	}
+
+	/**
+	 * @param categoryName Category of the Channel.
+	 * @param channelName Name of the Channel.
+	 */
+	void setSource(final String categoryName, final String channelName) {
+		this.categoryName = categoryName;
+		this.channelName = channelName;
+	}
+
+	@Override
+	public String getCategoryName() {
+		return categoryName;
+	}
+
+	@Override
+	public String getChannelName() {
+		return channelName;
+	}
+
+	@Override
+	public Histogram.Snapshot getDnsTime() {
+		return dnsTime.snapshot();
+	}
+
+	@Override
+	public Histogram.Snapshot getConnectTime() {
+		return connectTime.snapshot();
+	}
+
+	@Override
+	public Histogram.Snapshot getDownloadTime() {
+		return downloadTime.snapshot();
+	}
+
+	@Override
+	public Histogram.Snapshot getParseTime() {
+		return parseTime.snapshot();
+	}
+
+	@Override
+	public Histogram.Snapshot getFetchTime() {
+		return fetchTime.snapshot();
+	}
+
+	@Override
+	public Histogram.Snapshot getRenderTime() {
+		return renderTime.snapshot();
+	}
+
+	@Override
+	public Histogram.Snapshot getBytes() {
+		return bytes.snapshot();
+	}
+
+	@Override
+	public int getEntryCount() {
+		return entryCount;
+	}
+
+	@Override
+	public int getLastStatus() {
+		return lastStatus;
+	}
+
+	@Override
+	public long getFetchCount() {
+		return fetchCount;
+	}
+
+	@Override
+	public long getNotModifiedCount() {
+		return notModifiedCount;
+	}
+
+	@Override
+	public long getErrorCount() {
+		return errorCount;
+	}
+
+	@Override
+	public String getLastError() {
+		return lastError;
+	}
+
+	@Override
+	public long getLastErrorTime() {
+		return lastErrorTime;
+	}
+
+	@Override
+	public synchronized void reset() {
+		dnsTime.clear();
+		connectTime.clear();
+		downloadTime.clear();
+		parseTime.clear();
+		fetchTime.clear();
+		renderTime.clear();
+		bytes.clear();
+		fetchCount = 0;
+		notModifiedCount = 0;
+		errorCount = 0;
+		lastError = null;
+		lastErrorTime = 0;
+	}
+}
@@ -0,0 +1,95 @@
+package feeder.model;
+
+/**
+ * <b>ChannelMetricsMXBean</b> is the JMX view of the {@link ChannelMetrics} of one Channel,
+ * registered by {@link MetricsRegistry} as {@code feeder:type=Channel,category=...,name=...}.
+ * Times are in milliseconds, sizes in bytes, each histogram covers the last fetches.
+ *
+ * @version	1.0
+ */
+public interface ChannelMetricsMXBean {
+	/**
+	 * @return Name of the Category of the Channel.
+	 */
+	String getCategoryName();
+
+	/**
+	 * @return Name of the Channel.
+	 */
+	String getChannelName();
+
+	/**
+	 * @return Time of resolving the host name.
+	 */
+	Histogram.Snapshot getDnsTime();
+
+	/**
+	 * @return Time from opening the connection until the response headers arrived.
+	 */
+	Histogram.Snapshot getConnectTime();
+
+	/**
+	 * @return Time spent waiting for the body of the response.
+	 */
+	Histogram.Snapshot getDownloadTime();
+
+	/**
+	 * @return Time spent parsing the feed, without waiting for the network.
+	 */
+	Histogram.Snapshot getParseTime();
+
+	/**
+	 * @return Whole fetch, from resolving the host name until the feed is parsed or the fetch failed.
+	 */
+	Histogram.Snapshot getFetchTime();
+
+	/**
+	 * @return Time of showing the content of the Channel.
+	 */
+	Histogram.Snapshot getRenderTime();
+
+	/**
+	 * @return Size of the downloaded feeds (not counting 304 Not Modified).
+	 */
+	Histogram.Snapshot getBytes();
+
+	/**
+	 * @return Number of entries in the last parsed feed.
+	 */
+	int getEntryCount();
+
+	/**
+	 * @return HTTP status of the last response, 0 if there was none.
+	 */
+	int getLastStatus();
+
+	/**
+	 * @return Number of fetches since the start.
+	 */
+	long getFetchCount();
+
+	/**
+	 * @return Number of fetches answered with 304 Not Modified.
+	 */
+	long getNotModifiedCount();
+
+	/**
+	 * @return Number of failed fetches since the start.
+	 */
+	long getErrorCount();
+
+	/**
+	 * @return Message of the last error, null if there was none.
+	 */
+	String getLastError();
+
+	/**
+	 * @return Time of the last error in milliseconds since the epoch, 0 if there was none.
+	 */
+	long getLastErrorTime();
+
+	/**
+	 * Forgets all the measurements.
+	 */
+	void reset();
+}
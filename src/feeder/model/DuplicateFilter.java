@@ -0,0 +1,201 @@
+package feeder.model;
+
+import java.util.Locale;
+
+/**
+ * <b>DuplicateFilter</b> recognizes News which were already seen - the same story
+ * published by several Channels or the same feed subscribed twice. Every News comes
+ * from a source (e.g. the index of its Channel) and links and titles only match News
+ * of other sources: a feed repeating its headline every day or linking every item to
+ * its home page keeps all of its News. Links (after normalization) and GUIDs which are
+ * links are compared as one kind of key. Other GUIDs, like "123" or "post-1", are unique
+ * only within their feed, so they match only News of the same source.
+ * <p>
+ * Only 64-bit hashes of these keys are kept, with the source which added them, in an
+ * open-addressing table whose size is bounded - when it's full, new keys are not remembered
+ * anymore, so some duplicates may pass. A collision of two hashes or two different stories
+ * of different sources with the same long title may still hide a News.
+ *
+ * @version	1.0
+ */
+final class DuplicateFilter {
+	/** Maximum number of remembered keys (8 MB of hashes and 4 MB of their sources). */
+	static final int MAX_KEYS = 1 << 20;
+	// short titles like "Live" or "Sport" are not specific enough to call two News the same
+	private static final int MIN_TITLE_LENGTH = 16;
+	private static final long EMPTY = 0;
+	private static final int NOT_FOUND = -1;
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	private static final String[] SCHEMES = { "https://", "http://" };
+
+	private final long[] table;
+	private final int[] sources;
+	private final int mask;
+	private final int maxSize;
+	private int size = 0;
+
+	/**
+	 * @param expectedNews Expected number of checked News, used to size the table.
+	 */
+	DuplicateFilter(final int expectedNews) {
+		// up to three keys per news, the table is kept at most half full
+		long wanted = Math.min((long) MAX_KEYS, Math.max(16L, expectedNews * 3L)) * 2;
+		int capacity = Integer.highestOneBit((int) (wanted - 1)) << 1;
+		table = new long[capacity];
+		sources = new int[capacity];
+		mask = capacity - 1;
+		maxSize = capacity / 2;
+	}
+
+	/**
+	 * Checks the News and remembers it.
+	 *
+	 * @param news News to check.
+	 * @param source Non-negative identifier of the Channel the News comes from.
+	 * @return True if the same News was already checked.
+	 */
+	boolean isDuplicate(final News news, final int source) {
+		String guid = news.getGuid();
+		long guidLink = EMPTY;
+		long feedGuid = EMPTY;
+		if (guid != null && isLink(guid)) {
+			guidLink = hash('u', normalizeLink(guid));
+		}
+		else if (guid != null) {
+			feedGuid = hash('g', source + " " + guid.trim());
+		}
+		long link = news.getLink() != null ? hash('u', normalizeLink(news.getLink())) : EMPTY;
+		String title = news.getTitle() != null ? normalizeTitle(news.getTitle()) : "";
+		long titleHash = title.length() >= MIN_TITLE_LENGTH ? hash('t', title) : EMPTY;
+
+		// the source is a part of a feed GUID key, so any match is the same feed
+		if (find(feedGuid) != NOT_FOUND) return true;
+		if (isOtherSource(find(guidLink), source) || isOtherSource(find(link), source)
+				|| isOtherSource(find(titleHash), source)) return true;
+
+		add(feedGuid, source);
+		add(guidLink, source);
+		add(link, source);
+		add(titleHash, source);
+		return false;
+	}
+
+	private static boolean isOtherSource(final int found, final int source) {
+		return found != NOT_FOUND && found != source;
+	}
+
+	private static boolean isLink(final String guid) {
+		for (String scheme : SCHEMES) {
+			if (guid.regionMatches(true, 0, scheme, 0, scheme.length())) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return Source which added the key, NOT_FOUND if it wasn't added.
+	 */
+	private int find(final long key) {
+		if (key == EMPTY) return NOT_FOUND;
+		for (int slot = spread(key) & mask; table[slot] != EMPTY; slot = (slot + 1) & mask) {
+			if (table[slot] == key) return sources[slot];
+		}
+		return NOT_FOUND;
+	}
+
+	private void add(final long key, final int source) {
+		if (key == EMPTY || size >= maxSize) return;
+		int slot = spread(key) & mask;
+		while (table[slot] != EMPTY) {
+			if (table[slot] == key) return;
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = key;
+		sources[slot] = source;
+		size++;
+	}
+
+	private static int spread(final long key) {
+		long mixed = key * 0x9e3779b97f4a7c15L;
+		return (int) (mixed >>> 32);
+	}
+
+	/**
+	 * FNV-1a hash of the text, with the kind of the key mixed in,
+	 * so a link never matches a title or a feed GUID.
+	 */
+	private static long hash(final char kind, final String text) {
+		long hash = (FNV_OFFSET ^ kind) * FNV_PRIME;
+		for (int i = 0; i < text.length(); i++) {
+			hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+		}
+		// 0 marks an empty slot
+		return hash == EMPTY ? 1 : hash;
+	}
+
+	/**
+	 * Drops the parts of a link which don't change the target: the scheme, "www.",
+	 * the fragment, tracking parameters and the trailing slash. The host is lower-cased.
+	 */
+	static String normalizeLink(final String link) {
+		String result = link.trim();
+		for (String scheme : SCHEMES) {
+			if (result.regionMatches(true, 0, scheme, 0, scheme.length())) {
+				result = result.substring(scheme.length());
+				break;
+			}
+		}
+		if (result.regionMatches(true, 0, "www.", 0, 4)) {
+			result = result.substring(4);
+		}
+
+		int fragment = result.indexOf('#');
+		if (fragment >= 0) {
+			result = result.substring(0, fragment);
+		}
+		String query = "";
+		int queryStart = result.indexOf('?');
+		if (queryStart >= 0) {
+			query = removeTrackingParameters(result.substring(queryStart + 1));
+			result = result.substring(0, queryStart);
+		}
+
+		while (result.endsWith("/")) {
+			result = result.substring(0, result.length() - 1);
+		}
+		int path = result.indexOf('/');
+		String host = path >= 0 ? result.substring(0, path) : result;
+		return host.toLowerCase(Locale.ROOT) + (path >= 0 ? result.substring(path) : "") + query;
+	}
+
+	private static String removeTrackingParameters(final String query) {
+		StringBuilder kept = new StringBuilder();
+		for (String parameter : query.split("&")) {
+			if (parameter.isEmpty() || parameter.startsWith("utm_")) continue;
+			kept.append(kept.length() == 0 ? '?' : '&').append(parameter);
+		}
+		return kept.toString();
+	}
+
+	/**
+	 * Lower-cases the title and collapses everything which isn't a letter or a digit.
+	 */
+	static String normalizeTitle(final String title) {
+		StringBuilder result = new StringBuilder(title.length());
+		boolean space = false;
+		for (int i = 0; i < title.length(); i++) {
+			char character = title.charAt(i);
+			if (Character.isLetterOrDigit(character)) {
+				if (space && result.length() > 0) {
+					result.append(' ');
+				}
+				result.append(Character.toLowerCase(character));
+				space = false;
+			}
+			else {
+				space = true;
+			}
+		}
+		return result.toString();
+	}
+}
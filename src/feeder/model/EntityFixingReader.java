@@ -0,0 +1,188 @@
+package feeder.model;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * <b>EntityFixingReader</b> makes feeds with HTML entities parseable as XML. Named entities
+ * which XML doesn't know (like &amp;nbsp;) are replaced with numeric references and a lone
+ * "&amp;" is escaped, CDATA sections are left untouched. Works on a fixed buffer,
+ * one character at a time, so unlike ROME's XmlFixerReader it doesn't allocate
+ * anything for the usual, well-formed text.
+ *
+ * @version	1.0
+ */
+final class EntityFixingReader extends Reader {
+	private static final int BUFFER_SIZE = 8192;
+	// longest entity name we try to recognize, longer ones are treated as a lone "&"
+	private static final int MAX_ENTITY_LENGTH = 10;
+	// longest piece written to the output at once - a copied entity
+	private static final int MAX_STEP = MAX_ENTITY_LENGTH + 2;
+	private static final String CDATA_START = "<![CDATA[";
+	private static final String CDATA_END = "]]>";
+	private static final String[] XML_ENTITIES = { "amp", "lt", "gt", "quot", "apos" };
+
+	private final Reader in;
+	private final char[] input = new char[BUFFER_SIZE];
+	private int inputStart = 0;
+	private int inputEnd = 0;
+	private boolean endOfInput = false;
+	private final char[] output = new char[BUFFER_SIZE + MAX_STEP];
+	private int outputStart = 0;
+	private int outputEnd = 0;
+	private boolean inCdata = false;
+
+	/**
+	 * @param in Reader of the XML document.
+	 */
+	EntityFixingReader(final Reader in) {
+		this.in = in;
+	}
+
+	@Override
+	public int read(final char[] buffer, final int offset, final int length) throws IOException {
+		if (length == 0) return 0;
+		while (outputStart == outputEnd) {
+			if (!fill()) return -1;
+		}
+		int count = Math.min(length, outputEnd - outputStart);
+		System.arraycopy(output, outputStart, buffer, offset, count);
+		outputStart += count;
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Reads more input and fixes as much of it as possible.
+	 *
+	 * @return False at the end of the document.
+	 */
+	private boolean fill() throws IOException {
+		outputStart = 0;
+		outputEnd = 0;
+
+		// what couldn't be decided yet (a split entity or CDATA marker) goes to the beginning
+		if (inputStart > 0) {
+			System.arraycopy(input, inputStart, input, 0, inputEnd - inputStart);
+			inputEnd -= inputStart;
+			inputStart = 0;
+		}
+		if (!endOfInput && inputEnd < input.length) {
+			int count = in.read(input, inputEnd, input.length - inputEnd);
+			if (count < 0) {
+				endOfInput = true;
+			}
+			else {
+				inputEnd += count;
+			}
+		}
+		if (endOfInput && inputStart == inputEnd) return false;
+
+		while (inputStart < inputEnd && outputEnd < BUFFER_SIZE) {
+			char current = input[inputStart];
+			if (inCdata) {
+				if (current == ']' && startsWith(CDATA_END)) {
+					copy(CDATA_END.length());
+					inCdata = false;
+					continue;
+				}
+				if (current == ']' && needsMoreInput(CDATA_END.length())) break;
+				copy(1);
+			}
+			else if (current == '<') {
+				if (startsWith(CDATA_START)) {
+					copy(CDATA_START.length());
+					inCdata = true;
+					continue;
+				}
+				if (needsMoreInput(CDATA_START.length())) break;
+				copy(1);
+			}
+			else if (current == '&') {
+				if (!fixEntity()) break;
+			}
+			else {
+				copy(1);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Copies or replaces the entity starting at the current position.
+	 *
+	 * @return False if the entity continues in the input which wasn't read yet.
+	 */
+	private boolean fixEntity() {
+		int end = -1;
+		int i = inputStart + 1;
+		for (; i < inputEnd && i - inputStart <= MAX_ENTITY_LENGTH + 1; i++) {
+			char character = input[i];
+			if (character == ';') {
+				end = i;
+				break;
+			}
+			if (!Character.isLetterOrDigit(character) && character != '#') break;
+		}
+		if (end < 0 && i == inputEnd && !endOfInput) return false;
+
+		if (end > inputStart + 1) {
+			if (input[inputStart + 1] == '#' || isXmlEntity(inputStart + 1, end)) {
+				copy(end - inputStart + 1);
+				return true;
+			}
+			int character = HtmlStripper.namedEntity(new String(input, inputStart + 1, end - inputStart - 1));
+			if (character >= 0) {
+				append("&#" + character + ";");
+				inputStart = end + 1;
+				return true;
+			}
+		}
+
+		// "&" which doesn't start a known entity is just a character
+		append("&amp;");
+		inputStart++;
+		return true;
+	}
+
+	private boolean isXmlEntity(final int start, final int end) {
+		for (String name : XML_ENTITIES) {
+			if (regionEquals(start, end, name)) return true;
+		}
+		return false;
+	}
+
+	private boolean startsWith(final String text) {
+		return inputEnd - inputStart >= text.length() && regionEquals(inputStart, inputStart + text.length(), text);
+	}
+
+	private boolean regionEquals(final int start, final int end, final String text) {
+		if (end - start != text.length()) return false;
+		for (int i = 0; i < text.length(); i++) {
+			if (input[start + i] != text.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return True if there's not enough input to tell if a marker of the given length starts here.
+	 */
+	private boolean needsMoreInput(final int length) {
+		return !endOfInput && inputEnd - inputStart < length;
+	}
+
+	private void copy(final int count) {
+		System.arraycopy(input, inputStart, output, outputEnd, count);
+		inputStart += count;
+		outputEnd += count;
+	}
+
+	private void append(final String text) {
+		text.getChars(0, text.length(), output, outputEnd);
+		outputEnd += text.length();
+	}
+}
@@ -0,0 +1,397 @@
+package feeder.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * <b>FeedCache</b> keeps the raw responses of feed servers on the disk, so a Channel
+ * can show its content right after the start of the application and revalidate it
+ * in the background. Each feed is stored compressed, together with its URL, fetch time,
+ * content hash and HTTP validators. The total size of the cache is limited; when it's
+ * exceeded, the least recently used feeds are removed.
+ *
+ * @version	1.0
+ */
+public class FeedCache {
+	/** Default directory of the cache. */
+	public static final String DEFAULT_DIRECTORY = "cache";
+	/** Default size limit of the cache (50 MB). */
+	public static final long DEFAULT_MAX_SIZE = 50 * 1024 * 1024;
+	private static final int MAGIC = 0x46434831; // "FCH1"
+	private static final String META_SUFFIX = ".meta";
+	private static final String BODY_SUFFIX = ".gz";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private final File directory;
+	private final long maxSize;
+	private long size = 0;
+
+	/**
+	 * Cached response of a single feed.
+	 */
+	public static final class Entry {
+		private final File body;
+		private final String url;
+		private final long fetchTime;
+		private final byte[] contentHash;
+		private final String etag;
+		private final String lastModified;
+
+		private Entry(File body, String url, long fetchTime, byte[] contentHash, String etag, String lastModified) {
+			this.body = body;
+			this.url = url;
+			this.fetchTime = fetchTime;
+			this.contentHash = contentHash;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * @return Decompressed response body, has to be closed.
+		 * @throws IOException Thrown when the file can't be read.
+		 */
+		public InputStream openBody() throws IOException {
+			return new GZIPInputStream(new BufferedInputStream(new FileInputStream(body)));
+		}
+
+		/**
+		 * @return URL of the feed.
+		 */
+		public String getUrl() {
+			return url;
+		}
+
+		/**
+		 * @return Time of the fetch in milliseconds since the epoch.
+		 */
+		public long getFetchTime() {
+			return fetchTime;
+		}
+
+		/**
+		 * @return SHA-1 of the response body.
+		 */
+		public byte[] getContentHash() {
+			return contentHash.clone();
+		}
+
+		/**
+		 * @return ETag header of the response, may be null.
+		 */
+		public String getEtag() {
+			return etag;
+		}
+
+		/**
+		 * @return Last-Modified header of the response, may be null.
+		 */
+		public String getLastModified() {
+			return lastModified;
+		}
+	}
+
+	/**
+	 * Copies everything read from the response to a compressed temporary file
+	 * and computes its hash, so the body doesn't have to be buffered in memory.
+	 */
+	public final class Writer extends FilterInputStream {
+		private final String url;
+		private final String key;
+		private final File temp;
+		private final OutputStream output;
+		private final MessageDigest digest;
+		private boolean failed = false;
+
+		private Writer(final String url, final InputStream input) throws IOException {
+			super(input);
+			this.url = url;
+			key = key(url);
+			temp = new File(directory, key + BODY_SUFFIX + TEMP_SUFFIX + Thread.currentThread().getId());
+			output = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			digest = sha1();
+		}
+
+		@Override
+		public int read() throws IOException {
+			int value = super.read();
+			if (value >= 0) {
+				copy(new byte[] { (byte) value }, 0, 1);
+			}
+			return value;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int count = super.read(buffer, offset, length);
+			if (count > 0) {
+				copy(buffer, offset, count);
+			}
+			return count;
+		}
+
+		@Override
+		public long skip(long count) throws IOException {
+			// skipped bytes wouldn't be cached
+			failed = true;
+			return super.skip(count);
+		}
+
+		/**
+		 * Parsers close their input when they're done, but the rest of the body
+		 * still has to be cached - the response is closed by commit or abort.
+		 */
+		@Override
+		public void close() {
+		}
+
+		private void copy(byte[] buffer, int offset, int length) {
+			if (failed) return;
+			try {
+				output.write(buffer, offset, length);
+				digest.update(buffer, offset, length);
+			}
+			catch (IOException e) {
+				// full disk etc. - the fetch itself must not fail because of the cache
+				failed = true;
+			}
+		}
+
+		/**
+		 * Stores the response. Has to be called after the whole body was read.
+		 *
+		 * @param etag ETag header of the response.
+		 * @param lastModified Last-Modified header of the response.
+		 * @return Stored entry, null if the response couldn't be stored.
+		 */
+		public Entry commit(final String etag, final String lastModified) {
+			try {
+				// parsers may stop before the end of the document
+				byte[] rest = new byte[8192];
+				while (read(rest, 0, rest.length) > 0) {
+				}
+				output.close();
+				if (failed) {
+					temp.delete();
+					return null;
+				}
+
+				Entry entry = new Entry(new File(directory, key + BODY_SUFFIX), url, System.currentTimeMillis(),
+						digest.digest(), etag, lastModified);
+				synchronized (FeedCache.this) {
+					size -= sizeOf(key);
+					ModelStore.replace(temp, entry.body);
+					writeMeta(entry);
+					size += sizeOf(key);
+					evict(key);
+				}
+				return entry;
+			}
+			catch (IOException e) {
+				temp.delete();
+				return null;
+			}
+			finally {
+				closeResponse();
+			}
+		}
+
+		/**
+		 * Drops the response, e.g. when it couldn't be parsed.
+		 */
+		public void abort() {
+			try {
+				output.close();
+			}
+			catch (IOException e) {
+				// deleted anyway
+			}
+			temp.delete();
+			closeResponse();
+		}
+
+		private void closeResponse() {
+			try {
+				in.close();
+			}
+			catch (IOException e) {
+				// nothing more to read anyway
+			}
+		}
+	}
+
+	/**
+	 * @param directory Directory of the cache, created if it doesn't exist.
+	 * @param maxSize Maximum total size of the cache in bytes.
+	 */
+	public FeedCache(final File directory, final long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+		directory.mkdirs();
+
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				// left by fetches interrupted by the end of the application
+				if (file.getName().contains(TEMP_SUFFIX)) {
+					file.delete();
+				}
+				else {
+					size += file.length();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Looks the feed up and marks it as recently used.
+	 *
+	 * @param url URL of the feed.
+	 * @return Cached response or null if there is none.
+	 */
+	public synchronized Entry get(final String url) {
+		String key = key(url);
+		File meta = new File(directory, key + META_SUFFIX);
+		File body = new File(directory, key + BODY_SUFFIX);
+		if (!meta.exists() || !body.exists()) return null;
+
+		try {
+			DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(meta)));
+			try {
+				if (input.readInt() != MAGIC) return null;
+				String cachedUrl = ModelStore.readString(input);
+				// different URLs with the same hash
+				if (!url.equals(cachedUrl)) return null;
+				long fetchTime = input.readLong();
+				byte[] contentHash = new byte[input.readUnsignedByte()];
+				input.readFully(contentHash);
+				Entry entry = new Entry(body, cachedUrl, fetchTime, contentHash,
+						ModelStore.readString(input), ModelStore.readString(input));
+				meta.setLastModified(System.currentTimeMillis());
+				return entry;
+			}
+			finally {
+				input.close();
+			}
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Starts storing a response. The returned stream should be read instead of
+	 * the original one and then committed or aborted.
+	 *
+	 * @param url URL of the feed.
+	 * @param input Response body.
+	 * @return Stream which copies the body to the cache.
+	 * @throws IOException Thrown when the temporary file can't be created.
+	 */
+	public Writer put(final String url, final InputStream input) throws IOException {
+		return new Writer(url, input);
+	}
+
+	/**
+	 * @return Total size of the cached files in bytes.
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	private void writeMeta(final Entry entry) throws IOException {
+		String key = key(entry.url);
+		File temp = new File(directory, key + META_SUFFIX + TEMP_SUFFIX);
+		DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			output.writeInt(MAGIC);
+			ModelStore.writeString(output, entry.url);
+			output.writeLong(entry.fetchTime);
+			output.writeByte(entry.contentHash.length);
+			output.write(entry.contentHash);
+			ModelStore.writeString(output, entry.etag);
+			ModelStore.writeString(output, entry.lastModified);
+		}
+		finally {
+			output.close();
+		}
+		ModelStore.replace(temp, new File(directory, key + META_SUFFIX));
+	}
+
+	private long sizeOf(final String key) {
+		return new File(directory, key + META_SUFFIX).length() + new File(directory, key + BODY_SUFFIX).length();
+	}
+
+	/**
+	 * Removes the least recently used feeds until the cache fits in its limit.
+	 *
+	 * @param keep Key of the feed which was just stored and shouldn't be removed.
+	 */
+	private void evict(final String keep) {
+		if (size <= maxSize) return;
+
+		File[] metas = directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.endsWith(META_SUFFIX);
+			}
+		});
+		if (metas == null) return;
+
+		// reading a feed touches its meta file, so the oldest one is the least recently used
+		final long[] times = new long[metas.length];
+		Integer[] order = new Integer[metas.length];
+		for (int i = 0; i < metas.length; i++) {
+			times[i] = metas[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer first, Integer second) {
+				return Long.compare(times[first], times[second]);
+			}
+		});
+
+		for (int i = 0; i < order.length && size > maxSize; i++) {
+			File meta = metas[order[i]];
+			String key = meta.getName().substring(0, meta.getName().length() - META_SUFFIX.length());
+			if (key.equals(keep)) continue;
+			size -= sizeOf(key);
+			meta.delete();
+			new File(directory, key + BODY_SUFFIX).delete();
+		}
+	}
+
+	private static String key(final String url) {
+		byte[] hash = sha1().digest(url.getBytes(StandardCharsets.UTF_8));
+		StringBuilder key = new StringBuilder(hash.length * 2);
+		for (byte value : hash) {
+			key.append(Character.forDigit((value >> 4) & 0xF, 16)).append(Character.forDigit(value & 0xF, 16));
+		}
+		return key.toString();
+	}
+
+	private static MessageDigest sha1() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException e) {
+			// every Java platform has to support SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+}
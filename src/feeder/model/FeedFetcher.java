@@ -0,0 +1,505 @@
+package feeder.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * <b>FeedFetcher</b> downloads feeds for all the Channels. Connections are kept alive and reused
+ * between fetches from the same host, feeds are requested compressed (gzip or deflate) and
+ * decoded while they're parsed, and every request has a connect and read timeout.
+ * Redirects are followed by the fetcher itself, also from http to https, and permanent
+ * ones (301, 308) are remembered, so the next fetch goes straight to the new address.
+ * <p>
+ * Servers are treated politely: only a few requests to one host are in flight at a time,
+ * requests to one host start at least a minimum interval apart, and a host answering
+ * 429 Too Many Requests or 503 Service Unavailable isn't asked again before the time
+ * it gave in Retry-After, or an exponentially growing, jittered backoff if it gave none.
+ * Until then fetches from it fail right away with {@link RetryLaterException}.
+ * Different hosts don't wait for each other at all. This is the one place the limit of
+ * a host is enforced - {@link HostScheduler} only sizes its workers by it.
+ *
+ * @version	1.0
+ */
+public class FeedFetcher {
+	/** Default maximum number of requests in flight to one host. */
+	public static final int DEFAULT_HOST_LIMIT = 2;
+	/** Default minimum interval between the starts of two requests to one host in milliseconds. */
+	public static final long DEFAULT_HOST_SPACING = 250;
+	private static final long BASE_BACKOFF = TimeUnit.SECONDS.toMillis(30);
+	private static final long MAX_BACKOFF = TimeUnit.HOURS.toMillis(1);
+	// longer Retry-After is most likely a mistake of the server
+	private static final long MAX_RETRY_AFTER = TimeUnit.DAYS.toMillis(1);
+	private static final int HTTP_TOO_MANY_REQUESTS = 429;
+	private static final String USER_AGENT = "Feeder/1.0";
+	private static final String ACCEPT = "application/rss+xml, application/atom+xml, application/rdf+xml;q=0.9, "
+			+ "application/xml;q=0.8, text/xml;q=0.8, */*;q=0.5";
+	private static final int MAX_REDIRECTS = 5;
+	private static final int HTTP_TEMPORARY_REDIRECT = 307;
+	private static final int HTTP_PERMANENT_REDIRECT = 308;
+	// bodies of redirects and errors are read to the end, so their connections can be reused
+	private static final int DRAIN_LIMIT = 64 * 1024;
+
+	static {
+		// idle connections kept per host - the default of 5 is too few for a publisher with dozens of feeds
+		if (System.getProperty("http.maxConnections") == null) {
+			System.setProperty("http.maxConnections", "16");
+		}
+	}
+
+	private final int hostLimit;
+	private final long hostSpacing;
+	// permanent redirects, by the address they were found at
+	private final Map<String, URL> redirects = new ConcurrentHashMap<String, URL>();
+	private final Map<String, Host> hosts = new ConcurrentHashMap<String, Host>();
+
+	/**
+	 * Thrown instead of asking a host which asked for a break (429 or 503),
+	 * also by a Channel which stopped fetching after repeated failures.
+	 */
+	public static class RetryLaterException extends IOException {
+		private static final long serialVersionUID = 1L;
+		private final int status;
+		private final long retryTime;
+
+		/**
+		 * @param reason Why there's no fetch now, the time left until the next one is appended.
+		 * @param status HTTP status, 0 if nothing was asked.
+		 * @param retryTime Time (milliseconds since the epoch) of the next fetch.
+		 */
+		RetryLaterException(final String reason, final int status, final long retryTime) {
+			super(reason + ", ponowna próba za "
+					+ Math.max(1, TimeUnit.MILLISECONDS.toSeconds(retryTime - System.currentTimeMillis())) + " s");
+			this.status = status;
+			this.retryTime = retryTime;
+		}
+
+		/**
+		 * @return HTTP status the host answered with, 0 if it wasn't asked at all.
+		 */
+		public int getStatus() {
+			return status;
+		}
+
+		/**
+		 * @return Time (milliseconds since the epoch) before which the host shouldn't be asked again.
+		 */
+		public long getRetryTime() {
+			return retryTime;
+		}
+	}
+
+	/**
+	 * Requests in flight to one host and how long it wants to be left alone.
+	 */
+	private static final class Host {
+		private final String name;
+		private final Semaphore permits;
+		private long nextStart = 0;
+		private long blockedUntil = 0;
+		private int failures = 0;
+
+		Host(final String name, final int limit) {
+			this.name = name;
+			permits = new Semaphore(limit, true);
+		}
+
+		/**
+		 * Waits for a free slot and for the spacing after the previous request.
+		 */
+		void acquire(final long spacing) throws IOException {
+			checkBlocked();
+			try {
+				permits.acquire();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Przerwano oczekiwanie na serwer " + name);
+			}
+			try {
+				long wait;
+				synchronized (this) {
+					long now = System.currentTimeMillis();
+					wait = Math.max(0, nextStart - now);
+					nextStart = now + wait + spacing;
+				}
+				if (wait > 0) {
+					Thread.sleep(wait);
+				}
+				// it might have asked for a break in the meantime
+				checkBlocked();
+			}
+			catch (InterruptedException e) {
+				permits.release();
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Przerwano oczekiwanie na serwer " + name);
+			}
+			catch (IOException e) {
+				permits.release();
+				throw e;
+			}
+		}
+
+		void release() {
+			permits.release();
+		}
+
+		private synchronized void checkBlocked() throws RetryLaterException {
+			if (System.currentTimeMillis() < blockedUntil) {
+				throw new RetryLaterException("Serwer " + name + " ogranicza pobieranie", 0, blockedUntil);
+			}
+		}
+
+		synchronized void succeeded() {
+			failures = 0;
+		}
+
+		/**
+		 * Blocks the host for the time it asked for or, if it didn't say, for an exponential backoff.
+		 * Jitter spreads the retries, so feeds throttled together don't come back together.
+		 */
+		synchronized RetryLaterException throttled(final int status, final String retryAfter) {
+			long now = System.currentTimeMillis();
+			long delay = parseRetryAfter(retryAfter, now);
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			if (delay >= 0) {
+				// never earlier than asked
+				delay += (long) (random.nextDouble() * delay / 10);
+			}
+			else {
+				long backoff = Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(failures, 16));
+				delay = backoff / 2 + (long) (random.nextDouble() * backoff / 2);
+			}
+			failures++;
+			blockedUntil = Math.max(blockedUntil, now + delay);
+			return new RetryLaterException("Serwer " + name + " ogranicza pobieranie (HTTP " + status + ")", status, blockedUntil);
+		}
+	}
+
+	/**
+	 * Creates a fetcher with the default limits.
+	 */
+	public FeedFetcher() {
+		this(DEFAULT_HOST_LIMIT, DEFAULT_HOST_SPACING);
+	}
+
+	/**
+	 * @param hostLimit Maximum number of requests in flight to one host.
+	 * @param hostSpacing Minimum interval between the starts of two requests to one host in milliseconds.
+	 */
+	public FeedFetcher(final int hostLimit, final long hostSpacing) {
+		if (hostLimit < 1 || hostSpacing < 0) {
+			throw new IllegalArgumentException("Niepoprawne ograniczenia pobierania.");
+		}
+		this.hostLimit = hostLimit;
+		this.hostSpacing = hostSpacing;
+	}
+
+	/**
+	 * @return Maximum number of requests in flight to one host, enforced by the fetcher itself.
+	 */
+	public int getHostLimit() {
+		return hostLimit;
+	}
+
+	/**
+	 * @return Minimum interval between the starts of two requests to one host in milliseconds.
+	 */
+	public long getHostSpacing() {
+		return hostSpacing;
+	}
+
+	/**
+	 * Response to a fetch. Has to be closed, which returns its connection to the pool.
+	 */
+	public static final class Response implements Closeable {
+		private final URLConnection connection;
+		private final int status;
+		private final InputStream body;
+		private Host host;
+
+		private Response(final URLConnection connection, final int status, final InputStream body, final Host host) {
+			this.connection = connection;
+			this.status = status;
+			this.body = body;
+			this.host = host;
+		}
+
+		/**
+		 * @return HTTP status, 0 if the feed wasn't fetched over HTTP.
+		 */
+		public int getStatus() {
+			return status;
+		}
+
+		/**
+		 * @return True if the feed hasn't changed since the given validators.
+		 */
+		public boolean isNotModified() {
+			return status == HttpURLConnection.HTTP_NOT_MODIFIED;
+		}
+
+		/**
+		 * @return Decoded body, read as it arrives.
+		 */
+		public InputStream getBody() {
+			return body;
+		}
+
+		/**
+		 * @return Content-Type header, null if there was none.
+		 */
+		public String getContentType() {
+			return connection.getContentType();
+		}
+
+		/**
+		 * @return ETag header, null if there was none.
+		 */
+		public String getEtag() {
+			return connection.getHeaderField("ETag");
+		}
+
+		/**
+		 * @return Last-Modified header, null if there was none.
+		 */
+		public String getLastModified() {
+			return connection.getHeaderField("Last-Modified");
+		}
+
+		/**
+		 * @return Address the feed was finally fetched from, after redirects.
+		 */
+		public URL getUrl() {
+			return connection.getURL();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				body.close();
+			}
+			finally {
+				// the host can take the next request
+				if (host != null) {
+					host.release();
+					host = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fetches the feed. Validators are sent only if given, so the server answers 304 Not Modified
+	 * when the feed hasn't changed. Responses other than 200 and 304 are errors.
+	 *
+	 * @param url Address of the feed.
+	 * @param etag ETag of the content the caller has, null if none.
+	 * @param lastModified Last-Modified of the content the caller has, null if none.
+	 * @param timeout Connect and read timeout in milliseconds.
+	 * @param sample Measurements of the fetch.
+	 * @return The response, its body not read yet.
+	 * @throws IOException Thrown when the feed can't be fetched or the server answered with an error.
+	 */
+	Response fetch(final URL url, final String etag, final String lastModified, final int timeout,
+			final ChannelMetrics.Sample sample) throws IOException {
+		URL cached = redirects.get(url.toString());
+		URL target = cached != null ? cached : url;
+		boolean isPermanent = true;
+		for (int redirect = 0; ; redirect++) {
+			if (redirect == 0 && target.getHost() != null && !target.getHost().isEmpty()) {
+				sample.resolve(target.getHost());
+			}
+			Host host = acquire(target);
+			// the Response keeps the slot of the host until it's closed
+			boolean isResponse = false;
+			try {
+				URLConnection connection = target.openConnection();
+				connection.setConnectTimeout(timeout);
+				connection.setReadTimeout(timeout);
+
+				if (!(connection instanceof HttpURLConnection)) {
+					connection.connect();
+					sample.responded(0);
+					return new Response(connection, 0, sample.meter(connection.getInputStream()), null);
+				}
+
+				HttpURLConnection httpConnection = (HttpURLConnection) connection;
+				httpConnection.setInstanceFollowRedirects(false);
+				httpConnection.setRequestProperty("User-Agent", USER_AGENT);
+				httpConnection.setRequestProperty("Accept", ACCEPT);
+				httpConnection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+				if (etag != null) {
+					httpConnection.setRequestProperty("If-None-Match", etag);
+				}
+				if (lastModified != null) {
+					httpConnection.setRequestProperty("If-Modified-Since", lastModified);
+				}
+
+				int status = httpConnection.getResponseCode();
+				sample.responded(status);
+				if (status == HttpURLConnection.HTTP_OK || status == HttpURLConnection.HTTP_NOT_MODIFIED) {
+					host.succeeded();
+					// the whole chain was permanent, so the old address is never asked again
+					if (redirect > 0 && isPermanent) {
+						redirects.put(url.toString(), target);
+					}
+					InputStream body = status == HttpURLConnection.HTTP_OK ? sample.meter(httpConnection.getInputStream())
+							: httpConnection.getInputStream();
+					try {
+						Response response = new Response(connection, status, decode(body, httpConnection.getContentEncoding()), host);
+						isResponse = true;
+						return response;
+					}
+					catch (IOException e) {
+						// not compressed after all
+						body.close();
+						throw e;
+					}
+				}
+
+				String location = httpConnection.getHeaderField("Location");
+				String retryAfter = httpConnection.getHeaderField("Retry-After");
+				drain(httpConnection);
+				if (status == HTTP_TOO_MANY_REQUESTS || status == HttpURLConnection.HTTP_UNAVAILABLE) {
+					throw host.throttled(status, retryAfter);
+				}
+				if (!isRedirect(status) || location == null) {
+					// the feed may have moved again, next time the old address is asked first
+					if (cached != null) {
+						redirects.remove(url.toString());
+					}
+					throw new IOException("Serwer zwrócił kod HTTP " + status + " dla " + target);
+				}
+				if (redirect == MAX_REDIRECTS) {
+					throw new IOException("Za dużo przekierowań dla " + url);
+				}
+				isPermanent &= status == HttpURLConnection.HTTP_MOVED_PERM || status == HTTP_PERMANENT_REDIRECT;
+				try {
+					target = new URL(target, location);
+				}
+				catch (MalformedURLException e) {
+					throw new IOException("Niepoprawne przekierowanie " + location + " dla " + url, e);
+				}
+			}
+			finally {
+				if (host != null && !isResponse) {
+					host.release();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Takes a slot of the host of the address, waiting for it and for the spacing after the previous request.
+	 *
+	 * @return The host, to be released after the request, null if the address isn't HTTP.
+	 */
+	private Host acquire(final URL target) throws IOException {
+		String protocol = target.getProtocol();
+		if (!protocol.equals("http") && !protocol.equals("https")) return null;
+		String name = target.getHost().toLowerCase(Locale.ROOT);
+		Host host = hosts.get(name);
+		if (host == null) {
+			Host created = new Host(name, hostLimit);
+			host = hosts.putIfAbsent(name, created);
+			if (host == null) host = created;
+		}
+		host.acquire(hostSpacing);
+		return host;
+	}
+
+	/**
+	 * @return Delay in milliseconds the Retry-After header asks for, -1 if it's missing or invalid.
+	 */
+	static long parseRetryAfter(final String retryAfter, final long now) {
+		if (retryAfter == null) return -1;
+		String value = retryAfter.trim();
+		long delay;
+		try {
+			delay = TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+		}
+		catch (NumberFormatException e) {
+			try {
+				delay = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli() - now;
+			}
+			catch (DateTimeParseException dateException) {
+				return -1;
+			}
+		}
+		return Math.min(MAX_RETRY_AFTER, Math.max(0, delay));
+	}
+
+	/**
+	 * @param url Address of a feed.
+	 * @return Host of the address in lower case, empty if the address is invalid.
+	 */
+	static String host(final String url) {
+		try {
+			return new URL(url).getHost().toLowerCase(Locale.ROOT);
+		}
+		catch (MalformedURLException e) {
+			return "";
+		}
+	}
+
+	private static boolean isRedirect(final int status) {
+		return status == HttpURLConnection.HTTP_MOVED_PERM || status == HttpURLConnection.HTTP_MOVED_TEMP
+				|| status == HttpURLConnection.HTTP_SEE_OTHER || status == HTTP_TEMPORARY_REDIRECT
+				|| status == HTTP_PERMANENT_REDIRECT;
+	}
+
+	private static InputStream decode(final InputStream body, final String encoding) throws IOException {
+		if (encoding == null) return body;
+		String name = encoding.trim().toLowerCase(Locale.ROOT);
+		if (name.equals("gzip") || name.equals("x-gzip")) {
+			return new GZIPInputStream(body, 8192);
+		}
+		if (name.equals("deflate")) {
+			return new InflaterInputStream(body);
+		}
+		return body;
+	}
+
+	/**
+	 * Reads a short body to the end, so the connection goes back to the pool instead of being closed.
+	 */
+	private static void drain(final HttpURLConnection connection) {
+		try {
+			InputStream body = connection.getErrorStream();
+			if (body == null) {
+				body = connection.getInputStream();
+			}
+			try {
+				byte[] buffer = new byte[8192];
+				int total = 0;
+				int count;
+				while (total < DRAIN_LIMIT && (count = body.read(buffer)) > 0) {
+					total += count;
+				}
+			}
+			finally {
+				body.close();
+			}
+		}
+		catch (IOException e) {
+			// the connection is simply not reused
+		}
+	}
+}
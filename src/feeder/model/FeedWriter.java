@@ -0,0 +1,252 @@
+package feeder.model;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * <b>FeedWriter</b> writes a List of News as a feed other readers can subscribe to,
+ * e.g. the aggregated feed of a Category - in RSS 2.0, Atom 1.0 or JSON Feed 1.0.
+ * The documents are streamed, nothing but the News themselves is kept in memory.
+ *
+ * @version	1.0
+ */
+public final class FeedWriter {
+	private static final XMLOutputFactory FACTORY = XMLOutputFactory.newInstance();
+	private static final DateTimeFormatter RFC_1123 = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+	private static final DateTimeFormatter RFC_3339 = DateTimeFormatter.ISO_OFFSET_DATE_TIME.withZone(ZoneOffset.UTC);
+	private static final String ATOM_NAMESPACE = "http://www.w3.org/2005/Atom";
+	private static final String JSON_FEED_VERSION = "https://jsonfeed.org/version/1";
+
+	private FeedWriter() {
+	}
+
+	/**
+	 * Writes the News as an RSS 2.0 document. The source Channel of each News
+	 * is written as its category.
+	 *
+	 * @param title Title of the feed.
+	 * @param content News to write, newest first.
+	 * @param output Stream to write to, not closed.
+	 * @throws IOException Thrown when the document can't be written.
+	 */
+	public static void writeRss(final String title, final List<News> content, final OutputStream output) throws IOException {
+		try {
+			XMLStreamWriter writer = FACTORY.createXMLStreamWriter(output, "UTF-8");
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeCharacters("\n");
+			writer.writeStartElement("rss");
+			writer.writeAttribute("version", "2.0");
+			writer.writeCharacters("\n");
+			writer.writeStartElement("channel");
+			writeElement(writer, "title", title);
+			writeElement(writer, "description", title);
+			writeElement(writer, "generator", "Feeder");
+			if (!content.isEmpty() && content.get(0).hasDate()) {
+				writeElement(writer, "lastBuildDate", formatDate(content.get(0).getPublishedTime()));
+			}
+
+			for (News news : content) {
+				writer.writeCharacters("\n");
+				writer.writeStartElement("item");
+				writeElement(writer, "title", news.getTitle());
+				writeElement(writer, "link", news.getLink());
+				String guid = news.getGuid() != null ? news.getGuid() : news.getLink();
+				if (guid != null) {
+					writer.writeStartElement("guid");
+					writer.writeAttribute("isPermaLink", String.valueOf(guid.equals(news.getLink())));
+					writer.writeCharacters(guid);
+					writer.writeEndElement();
+				}
+				writeElement(writer, "description", news.getDescription());
+				if (news.hasDate()) {
+					writeElement(writer, "pubDate", formatDate(news.getPublishedTime()));
+				}
+				writeElement(writer, "category", news.getChannel());
+				writer.writeEndElement();
+			}
+
+			writer.writeCharacters("\n");
+			writer.writeEndElement();
+			writer.writeEndElement();
+			writer.writeCharacters("\n");
+			writer.writeEndDocument();
+			writer.close();
+		}
+		catch (XMLStreamException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Writes the News as an Atom 1.0 document. Atom requires an id and a date of every entry,
+	 * so News without a GUID are identified by their links and News without a date
+	 * get the date of the newest one.
+	 *
+	 * @param title Title of the feed.
+	 * @param content News to write, newest first.
+	 * @param output Stream to write to, not closed.
+	 * @throws IOException Thrown when the document can't be written.
+	 */
+	public static void writeAtom(final String title, final List<News> content, final OutputStream output) throws IOException {
+		long updated = !content.isEmpty() && content.get(0).hasDate() ? content.get(0).getPublishedTime() : 0;
+		try {
+			XMLStreamWriter writer = FACTORY.createXMLStreamWriter(output, "UTF-8");
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeCharacters("\n");
+			writer.writeStartElement("feed");
+			writer.writeDefaultNamespace(ATOM_NAMESPACE);
+			writer.writeCharacters("\n");
+			writeElement(writer, "id", "urn:feeder:" + urlEncode(title));
+			writeElement(writer, "title", title);
+			writeElement(writer, "updated", RFC_3339.format(Instant.ofEpochMilli(updated)));
+			writeElement(writer, "generator", "Feeder");
+
+			for (News news : content) {
+				writer.writeCharacters("\n");
+				writer.writeStartElement("entry");
+				String id = news.getGuid() != null ? news.getGuid() : news.getLink();
+				writeElement(writer, "id", id != null ? id : "urn:feeder:" + urlEncode(title) + ":" + urlEncode(String.valueOf(news.getTitle())));
+				writeElement(writer, "title", news.getTitle() != null ? news.getTitle() : "");
+				writeElement(writer, "updated", RFC_3339.format(Instant.ofEpochMilli(news.hasDate() ? news.getPublishedTime() : updated)));
+				if (news.getLink() != null) {
+					writer.writeEmptyElement("link");
+					writer.writeAttribute("rel", "alternate");
+					writer.writeAttribute("href", news.getLink());
+				}
+				writeElement(writer, "summary", news.getDescription());
+				if (news.getChannel() != null) {
+					writer.writeEmptyElement("category");
+					writer.writeAttribute("term", news.getChannel());
+				}
+				writer.writeEndElement();
+			}
+
+			writer.writeCharacters("\n");
+			writer.writeEndElement();
+			writer.writeCharacters("\n");
+			writer.writeEndDocument();
+			writer.close();
+		}
+		catch (XMLStreamException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Writes the News as a JSON Feed 1.0 document.
+	 *
+	 * @param title Title of the feed.
+	 * @param content News to write, newest first.
+	 * @param output Stream to write to, not closed.
+	 * @throws IOException Thrown when the document can't be written.
+	 */
+	public static void writeJson(final String title, final List<News> content, final OutputStream output) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+		writer.write("{\"version\":");
+		writeJsonString(writer, JSON_FEED_VERSION);
+		writer.write(",\"title\":");
+		writeJsonString(writer, title);
+		writer.write(",\"items\":[");
+		boolean isFirst = true;
+		for (News news : content) {
+			writer.write(isFirst ? "\n{" : ",\n{");
+			isFirst = false;
+			String id = news.getGuid() != null ? news.getGuid() : news.getLink();
+			writer.write("\"id\":");
+			writeJsonString(writer, id != null ? id : String.valueOf(news.getTitle()));
+			writeJsonField(writer, "url", news.getLink());
+			writeJsonField(writer, "title", news.getTitle());
+			// JSON Feed requires some content
+			writeJsonField(writer, "content_text", news.getDescription() != null ? news.getDescription() : "");
+			if (news.hasDate()) {
+				writeJsonField(writer, "date_published", RFC_3339.format(Instant.ofEpochMilli(news.getPublishedTime())));
+			}
+			if (news.getChannel() != null) {
+				writer.write(",\"tags\":[");
+				writeJsonString(writer, news.getChannel());
+				writer.write(']');
+			}
+			writer.write('}');
+		}
+		writer.write("\n]}\n");
+		writer.flush();
+	}
+
+	private static void writeJsonField(final Writer writer, final String name, final String value) throws IOException {
+		if (value == null) return;
+		writer.write(",\"");
+		writer.write(name);
+		writer.write("\":");
+		writeJsonString(writer, value);
+	}
+
+	private static void writeJsonString(final Writer writer, final String value) throws IOException {
+		writer.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char character = value.charAt(i);
+			switch (character) {
+			case '"':
+				writer.write("\\\"");
+				break;
+			case '\\':
+				writer.write("\\\\");
+				break;
+			case '\n':
+				writer.write("\\n");
+				break;
+			case '\r':
+				writer.write("\\r");
+				break;
+			case '\t':
+				writer.write("\\t");
+				break;
+			default:
+				if (character < 0x20 || character == '\u2028' || character == '\u2029') {
+					writer.write(String.format("\\u%04x", (int) character));
+				}
+				else {
+					writer.write(character);
+				}
+			}
+		}
+		writer.write('"');
+	}
+
+	private static String urlEncode(final String text) {
+		try {
+			return URLEncoder.encode(text, "UTF-8");
+		}
+		catch (UnsupportedEncodingException e) {
+			// UTF-8 is always supported
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Writes the element with text content, nothing if the text is null.
+	 */
+	private static void writeElement(final XMLStreamWriter writer, final String name, final String text) throws XMLStreamException {
+		if (text == null) return;
+		writer.writeStartElement(name);
+		writer.writeCharacters(text);
+		writer.writeEndElement();
+	}
+
+	private static String formatDate(final long time) {
+		return RFC_1123.format(Instant.ofEpochMilli(time));
+	}
+}
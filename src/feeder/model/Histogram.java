@@ -0,0 +1,123 @@
+package feeder.model;
+
+import java.util.Arrays;
+
+/**
+ * <b>Histogram</b> keeps the last values of a measurement (e.g. the download times
+ * of the last 100 fetches of a Channel), so its percentiles follow the current behaviour
+ * of a feed instead of its whole history. Thread safe.
+ *
+ * @version	1.0
+ */
+public final class Histogram {
+	private final double[] values;
+	private int next = 0;
+	private int count = 0;
+
+	/**
+	 * Summary of the values in the window, exposed through JMX as composite data.
+	 */
+	public static final class Snapshot {
+		private static final Snapshot EMPTY = new Snapshot(0, 0, 0, 0, 0);
+		private final int count;
+		private final double mean;
+		private final double median;
+		private final double percentile95;
+		private final double max;
+
+		private Snapshot(int count, double mean, double median, double percentile95, double max) {
+			this.count = count;
+			this.mean = mean;
+			this.median = median;
+			this.percentile95 = percentile95;
+			this.max = max;
+		}
+
+		/**
+		 * @return Number of values in the window.
+		 */
+		public int getCount() {
+			return count;
+		}
+
+		/**
+		 * @return Average value, 0 if there are none.
+		 */
+		public double getMean() {
+			return mean;
+		}
+
+		/**
+		 * @return Median value, 0 if there are none.
+		 */
+		public double getMedian() {
+			return median;
+		}
+
+		/**
+		 * @return Value which 95% of the values don't exceed, 0 if there are none.
+		 */
+		public double getPercentile95() {
+			return percentile95;
+		}
+
+		/**
+		 * @return Highest value, 0 if there are none.
+		 */
+		public double getMax() {
+			return max;
+		}
+	}
+
+	/**
+	 * @param window Number of the newest values to keep.
+	 */
+	public Histogram(final int window) {
+		values = new double[window];
+	}
+
+	/**
+	 * Adds a value, dropping the oldest one if the window is full.
+	 *
+	 * @param value Value to add.
+	 */
+	public synchronized void add(final double value) {
+		values[next] = value;
+		next = (next + 1) % values.length;
+		count = Math.min(count + 1, values.length);
+	}
+
+	/**
+	 * @return Summary of the values in the window.
+	 */
+	public Snapshot snapshot() {
+		double[] sorted;
+		synchronized (this) {
+			if (count == 0) return Snapshot.EMPTY;
+			sorted = Arrays.copyOf(values, count);
+		}
+		Arrays.sort(sorted);
+		double sum = 0;
+		for (double value : sorted) {
+			sum += value;
+		}
+		return new Snapshot(sorted.length, sum / sorted.length, percentile(sorted, 0.5), percentile(sorted, 0.95),
+				sorted[sorted.length - 1]);
+	}
+
+	/**
+	 * Nearest rank - always one of the measured values.
+	 */
+	private static double percentile(final double[] sorted, final double fraction) {
+		int rank = (int) Math.ceil(fraction * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	/**
+	 * Forgets all the values.
+	 */
+	public synchronized void clear() {
+		next = 0;
+		count = 0;
+	}
+}
@@ -0,0 +1,77 @@
+package feeder.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * <b>HostScheduler</b> runs fetches grouped by the server they go to. Fetches of one host
+ * wait in its queue and are run one after another by at most {@link FeedFetcher#getHostLimit()}
+ * workers, so a slow or throttling server occupies only its own workers, never the threads
+ * meant for the others.
+ * <p>
+ * It only decides how many threads wait for a host. The limit of requests in flight is
+ * enforced by {@link FeedFetcher} alone, which sees every request, also the ones made outside
+ * of a HostScheduler and the ones redirected to another host. The workers are sized from the
+ * same limit, so they don't park pool threads on it.
+ *
+ * @version	1.0
+ */
+final class HostScheduler {
+	private final Map<String, Queue<Runnable>> hosts = new LinkedHashMap<String, Queue<Runnable>>();
+	private int size = 0;
+
+	/**
+	 * Adds a fetch to the queue of its host. Not thread-safe, all the fetches are added before {@link #start(ExecutorService)}.
+	 *
+	 * @param url Address of the feed, its host chooses the queue.
+	 * @param fetch Fetch to run.
+	 */
+	void add(final String url, final Runnable fetch) {
+		String host = FeedFetcher.host(url);
+		Queue<Runnable> queue = hosts.get(host);
+		if (queue == null) {
+			queue = new ConcurrentLinkedQueue<Runnable>();
+			hosts.put(host, queue);
+		}
+		queue.add(fetch);
+		size++;
+	}
+
+	/**
+	 * @return Number of added fetches.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Starts the workers of every host. A worker runs the fetches of its host until the queue
+	 * is empty or it's interrupted, so cancelling the workers leaves the rest of the queues unfetched.
+	 *
+	 * @param executor Executor to run the workers.
+	 * @return Workers, to be cancelled when nobody needs the rest of the fetches.
+	 */
+	List<Future<?>> start(final ExecutorService executor) {
+		int hostLimit = Channel.getFetcher().getHostLimit();
+		List<Future<?>> workers = new ArrayList<Future<?>>();
+		for (final Queue<Runnable> queue : hosts.values()) {
+			for (int i = 0; i < Math.min(hostLimit, queue.size()); i++) {
+				workers.add(executor.submit(new Runnable() {
+					public void run() {
+						for (Runnable fetch = queue.poll(); fetch != null; fetch = queue.poll()) {
+							fetch.run();
+							if (Thread.currentThread().isInterrupted()) return;
+						}
+					}
+				}));
+			}
+		}
+		return workers;
+	}
+}
@@ -0,0 +1,209 @@
+package feeder.model;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <b>HtmlStripper</b> turns an HTML fragment (e.g. entry description) into plain text.
+ * Tags are removed, entities are decoded and whitespace is collapsed in a single pass
+ * over the input, optionally stopping once the preview length is reached.
+ * The internal buffer is reused between calls, so one instance should be used for all
+ * the entries of a feed. Not thread-safe.
+ * 
+ * @version	1.0
+ */
+public class HtmlStripper {
+	private static final char ELLIPSIS = '…';
+	private static final int MAX_ENTITY_LENGTH = 10;
+	private static final Map<String, Character> ENTITIES = new HashMap<String, Character>();
+	// names of the ISO 8859-1 entities, from &nbsp; (160) to &yuml; (255)
+	private static final int LATIN1_START = 160;
+	private static final String[] LATIN1 = {
+		"nbsp", "iexcl", "cent", "pound", "curren", "yen", "brvbar", "sect", "uml", "copy", "ordf", "laquo",
+		"not", "shy", "reg", "macr", "deg", "plusmn", "sup2", "sup3", "acute", "micro", "para", "middot",
+		"cedil", "sup1", "ordm", "raquo", "frac14", "frac12", "frac34", "iquest", "Agrave", "Aacute", "Acirc", "Atilde",
+		"Auml", "Aring", "AElig", "Ccedil", "Egrave", "Eacute", "Ecirc", "Euml", "Igrave", "Iacute", "Icirc", "Iuml",
+		"ETH", "Ntilde", "Ograve", "Oacute", "Ocirc", "Otilde", "Ouml", "times", "Oslash", "Ugrave", "Uacute", "Ucirc",
+		"Uuml", "Yacute", "THORN", "szlig", "agrave", "aacute", "acirc", "atilde", "auml", "aring", "aelig", "ccedil",
+		"egrave", "eacute", "ecirc", "euml", "igrave", "iacute", "icirc", "iuml", "eth", "ntilde", "ograve", "oacute",
+		"ocirc", "otilde", "ouml", "divide", "oslash", "ugrave", "uacute", "ucirc", "uuml", "yacute", "thorn", "yuml"
+	};
+
+	static {
+		ENTITIES.put("amp", '&');
+		ENTITIES.put("lt", '<');
+		ENTITIES.put("gt", '>');
+		ENTITIES.put("quot", '"');
+		ENTITIES.put("apos", '\'');
+		ENTITIES.put("nbsp", '\u00A0');
+		ENTITIES.put("hellip", '…');
+		ENTITIES.put("ndash", '–');
+		ENTITIES.put("mdash", '—');
+		ENTITIES.put("lsquo", '‘');
+		ENTITIES.put("rsquo", '’');
+		ENTITIES.put("sbquo", '‚');
+		ENTITIES.put("ldquo", '“');
+		ENTITIES.put("rdquo", '”');
+		ENTITIES.put("bdquo", '„');
+		ENTITIES.put("laquo", '«');
+		ENTITIES.put("raquo", '»');
+		ENTITIES.put("copy", '©');
+		ENTITIES.put("reg", '®');
+		ENTITIES.put("trade", '™');
+		ENTITIES.put("deg", '°');
+		ENTITIES.put("euro", '€');
+		ENTITIES.put("pound", '£');
+		ENTITIES.put("bull", '•');
+		ENTITIES.put("middot", '·');
+		for (int i = 0; i < LATIN1.length; i++) {
+			if (!ENTITIES.containsKey(LATIN1[i])) {
+				ENTITIES.put(LATIN1[i], (char) (LATIN1_START + i));
+			}
+		}
+	}
+
+	private final StringBuilder buffer = new StringBuilder(256);
+	private final int previewLength;
+
+	/**
+	 * Creates a stripper which returns the whole text.
+	 */
+	public HtmlStripper() {
+		this(0);
+	}
+
+	/**
+	 * @param previewLength Maximum number of characters of the result (not counting the ellipsis), 0 for no limit.
+	 */
+	public HtmlStripper(final int previewLength) {
+		this.previewLength = previewLength;
+	}
+
+	/**
+	 * Converts HTML to plain text.
+	 * 
+	 * @param html HTML fragment.
+	 * @return Plain text without tags, entities and redundant whitespace, null if html was null.
+	 */
+	public String strip(final String html) {
+		if (html == null) return null;
+
+		buffer.setLength(0);
+		int length = html.length();
+		int limit = previewLength > 0 ? previewLength : Integer.MAX_VALUE;
+		boolean pendingSpace = false;
+		boolean noMoreTags = false;
+		int i = 0;
+
+		while (i < length) {
+			char current = html.charAt(i);
+
+			if (current == '<' && !noMoreTags && i + 1 < length && isTagStart(html.charAt(i + 1))) {
+				int end = html.indexOf('>', i + 2);
+				if (end < 0) {
+					// "<" without closing ">" is just text, and so is every "<" after it
+					noMoreTags = true;
+				}
+				else {
+					// tags like <br> or <p> separate words
+					pendingSpace = true;
+					i = end + 1;
+					continue;
+				}
+			}
+
+			if (current == '&') {
+				int end = html.indexOf(';', i + 1);
+				if (end > i + 1 && end - i <= MAX_ENTITY_LENGTH) {
+					int decoded = decodeEntity(html, i + 1, end);
+					if (decoded >= 0) {
+						i = end + 1;
+						if (isSpace(decoded)) {
+							pendingSpace = true;
+						}
+						else {
+							if (!append(pendingSpace, limit)) break;
+							buffer.appendCodePoint(decoded);
+							pendingSpace = false;
+						}
+						continue;
+					}
+				}
+			}
+
+			if (isSpace(current)) {
+				pendingSpace = true;
+			}
+			else {
+				if (!append(pendingSpace, limit)) break;
+				buffer.append(current);
+				pendingSpace = false;
+			}
+			i++;
+		}
+
+		return buffer.toString();
+	}
+
+	/**
+	 * Prepares the buffer for the next visible character: writes the pending space
+	 * (never at the beginning of the text) and checks the preview length.
+	 * 
+	 * @return False if there is no room left, in which case the ellipsis was already appended.
+	 */
+	private boolean append(final boolean pendingSpace, final int limit) {
+		if (buffer.length() >= limit) {
+			buffer.append(ELLIPSIS);
+			return false;
+		}
+		if (pendingSpace && buffer.length() > 0) {
+			buffer.append(' ');
+		}
+		return true;
+	}
+
+	private static boolean isSpace(final int character) {
+		return Character.isWhitespace(character) || character == '\u00A0';
+	}
+
+	private static boolean isTagStart(final char next) {
+		return Character.isLetter(next) || next == '/' || next == '!' || next == '?';
+	}
+
+	/**
+	 * @param html Text containing the entity.
+	 * @param start Index of the first character after '&amp;'.
+	 * @param end Index of ';'.
+	 * @return Decoded code point or -1 if the entity is unknown.
+	 */
+	private static int decodeEntity(final String html, final int start, final int end) {
+		if (html.charAt(start) == '#') {
+			int radix = 10;
+			int digit = start + 1;
+			if (digit < end && (html.charAt(digit) == 'x' || html.charAt(digit) == 'X')) {
+				radix = 16;
+				digit++;
+			}
+			if (digit == end) return -1;
+
+			int codePoint = 0;
+			for (; digit < end; digit++) {
+				int value = Character.digit(html.charAt(digit), radix);
+				if (value < 0) return -1;
+				codePoint = codePoint * radix + value;
+			}
+			return Character.isValidCodePoint(codePoint) ? codePoint : -1;
+		}
+
+		return namedEntity(html.substring(start, end));
+	}
+
+	/**
+	 * @param name Name of an HTML entity, without "&amp;" and ";".
+	 * @return Character of the entity, -1 if unknown.
+	 */
+	static int namedEntity(final String name) {
+		Character named = ENTITIES.get(name);
+		return named != null ? named : -1;
+	}
+}
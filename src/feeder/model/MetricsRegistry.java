@@ -0,0 +1,239 @@
+package feeder.model;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <b>MetricsRegistry</b> exposes the {@link ChannelMetrics} of every Channel of the Model
+ * as an MXBean, {@code feeder:type=Channel,category="...",name="..."}, and follows
+ * the changes of the Model - added, renamed, moved and removed Channels. With the usual
+ * {@code -Dcom.sun.management.jmxremote} options they can be watched from JConsole or
+ * collected by any JMX monitoring, also from the headless daemon.
+ *
+ * @version	1.0
+ */
+public class MetricsRegistry implements ModelListener, MetricsRegistryMXBean {
+	private static final String DOMAIN = "feeder";
+	// Channels listed by the MXBean, the UI shows all of them
+	private static final int SLOWEST_LIMIT = 20;
+	private final Model model;
+	private final MBeanServer server;
+	private final Map<Channel, ObjectName> registered = new IdentityHashMap<Channel, ObjectName>();
+	private final ObjectName name;
+
+	/**
+	 * Registers the Channels of the Model in the platform MBean server.
+	 *
+	 * @param model Model whose Channels are exposed.
+	 */
+	public MetricsRegistry(final Model model) {
+		this(model, ManagementFactory.getPlatformMBeanServer());
+	}
+
+	/**
+	 * Registers the Channels of the Model.
+	 *
+	 * @param model Model whose Channels are exposed.
+	 * @param server MBean server to register them in.
+	 */
+	public MetricsRegistry(final Model model, final MBeanServer server) {
+		this.model = model;
+		this.server = server;
+		name = objectName("type=Metrics");
+		register(this, name);
+		synchronized (model) {
+			model.addModelListener(this);
+			synchronize();
+		}
+	}
+
+	/**
+	 * Unregisters all the MXBeans and stops following the Model.
+	 */
+	public void close() {
+		model.removeModelListener(this);
+		synchronized (model) {
+			synchronized (this) {
+				for (ObjectName channelName : registered.values()) {
+					unregister(channelName);
+				}
+				registered.clear();
+			}
+		}
+		unregister(name);
+	}
+
+	/**
+	 * @param limit Maximum number of Channels, 0 for all of them.
+	 * @return Measurements of the Channels ordered by the 95th percentile of their fetch times, slowest first.
+	 */
+	public List<ChannelMetrics> getSlowest(final int limit) {
+		final Map<ChannelMetrics, Double> times = new HashMap<ChannelMetrics, Double>();
+		for (Channel channel : model.getAllChannels()) {
+			times.put(channel.getMetrics(), channel.getMetrics().getFetchTime().getPercentile95());
+		}
+		List<ChannelMetrics> slowest = new ArrayList<ChannelMetrics>(times.keySet());
+		Collections.sort(slowest, new Comparator<ChannelMetrics>() {
+			public int compare(ChannelMetrics first, ChannelMetrics second) {
+				return Double.compare(times.get(second), times.get(first));
+			}
+		});
+		return limit > 0 && slowest.size() > limit ? slowest.subList(0, limit) : slowest;
+	}
+
+	@Override
+	public String[] getSlowestChannels() {
+		List<String> lines = new ArrayList<String>();
+		for (ChannelMetrics metrics : getSlowest(SLOWEST_LIMIT)) {
+			lines.add(String.format("%s/%s: %.0f ms", metrics.getCategoryName(), metrics.getChannelName(),
+					metrics.getFetchTime().getPercentile95()));
+		}
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	@Override
+	public String[] getFailingChannels() {
+		List<String> lines = new ArrayList<String>();
+		for (Channel channel : model.getAllChannels()) {
+			ChannelMetrics metrics = channel.getMetrics();
+			if (metrics.getLastErrorTime() > 0 && metrics.getLastErrorTime() >= channel.getLastFetchTime()) {
+				lines.add(metrics.getCategoryName() + "/" + metrics.getChannelName() + ": " + metrics.getLastError());
+			}
+		}
+		return lines.toArray(new String[lines.size()]);
+	}
+
+	/**
+	 * Registers the new Channels, unregisters the removed ones and registers the renamed
+	 * and moved ones again under their new names. Called with the Model lock held.
+	 */
+	private synchronized void synchronize() {
+		Map<Channel, ObjectName> current = new IdentityHashMap<Channel, ObjectName>();
+		for (Category category : model.getCategoriesMap().values()) {
+			for (Channel channel : category.getChannelsMap().values()) {
+				channel.getMetrics().setSource(category.getName(), channel.getName());
+				current.put(channel, channelName(category.getName(), channel.getName()));
+			}
+		}
+
+		for (Iterator<Map.Entry<Channel, ObjectName>> iterator = registered.entrySet().iterator(); iterator.hasNext();) {
+			Map.Entry<Channel, ObjectName> entry = iterator.next();
+			if (!entry.getValue().equals(current.get(entry.getKey()))) {
+				unregister(entry.getValue());
+				iterator.remove();
+			}
+		}
+		for (Map.Entry<Channel, ObjectName> entry : current.entrySet()) {
+			if (!registered.containsKey(entry.getKey())) {
+				register(entry.getKey().getMetrics(), entry.getValue());
+				registered.put(entry.getKey(), entry.getValue());
+			}
+		}
+	}
+
+	private void register(final Object bean, final ObjectName objectName) {
+		try {
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(bean, objectName);
+		}
+		catch (JMException e) {
+			// metrics are only informative, the Channel works without them
+			System.err.println("Nie można zarejestrować " + objectName + ": " + e.getMessage());
+		}
+	}
+
+	private void unregister(final ObjectName objectName) {
+		try {
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		}
+		catch (JMException e) {
+			System.err.println("Nie można wyrejestrować " + objectName + ": " + e.getMessage());
+		}
+	}
+
+	private static ObjectName channelName(final String categoryName, final String channelName) {
+		return objectName("type=Channel,category=" + ObjectName.quote(categoryName) + ",name=" + ObjectName.quote(channelName));
+	}
+
+	private static ObjectName objectName(final String properties) {
+		try {
+			return new ObjectName(DOMAIN + ":" + properties);
+		}
+		catch (JMException e) {
+			// names are quoted, so they are always valid
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	@Override
+	public void categoryAdded(String name) {
+		// empty, nothing to register
+	}
+
+	@Override
+	public void categoryRenamed(String oldName, String newName) {
+		synchronize();
+	}
+
+	@Override
+	public void categoryRemoved(String name) {
+		synchronize();
+	}
+
+	@Override
+	public synchronized void channelAdded(String categoryName, Channel channel) {
+		// one at a time, an import adds hundreds of them
+		ObjectName channelName = channelName(categoryName, channel.getName());
+		channel.getMetrics().setSource(categoryName, channel.getName());
+		register(channel.getMetrics(), channelName);
+		registered.put(channel, channelName);
+	}
+
+	@Override
+	public void channelRenamed(String categoryName, String oldName, String newName) {
+		synchronize();
+	}
+
+	@Override
+	public void channelUrlChanged(String categoryName, String channelName, String newUrl) {
+		// same Channel, same name
+	}
+
+	@Override
+	public void channelMoved(String channelName, String oldCategoryName, String newCategoryName) {
+		synchronize();
+	}
+
+	@Override
+	public synchronized void channelRemoved(String categoryName, Channel channel) {
+		ObjectName channelName = registered.remove(channel);
+		if (channelName != null) {
+			unregister(channelName);
+		}
+	}
+
+	@Override
+	public void entriesUpdated(String categoryName, Channel channel) {
+		// measured by the Channel itself
+	}
+
+	@Override
+	public void channelStatusChanged(String categoryName, Channel channel) {
+		// errors are measured by the Channel itself
+	}
+}
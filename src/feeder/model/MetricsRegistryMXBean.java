@@ -0,0 +1,19 @@
+package feeder.model;
+
+/**
+ * <b>MetricsRegistryMXBean</b> is the JMX view of all the Channels together,
+ * registered as {@code feeder:type=Metrics}.
+ *
+ * @version	1.0
+ */
+public interface MetricsRegistryMXBean {
+	/**
+	 * @return The slowest Channels with the 95th percentile of their fetch times in milliseconds, slowest first.
+	 */
+	String[] getSlowestChannels();
+
+	/**
+	 * @return Channels whose last fetch failed, with the error.
+	 */
+	String[] getFailingChannels();
+}
@@ -5,9 +5,11 @@ import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
@@ -18,7 +20,8 @@ import com.rometools.rome.io.FeedException;
  * <b>Model</b> is an element of MVC structure - using DefaultTreeModel,
  * DefaultMutableTreeNode and obviously Channel and Category classes it
  * represents business logic of this application and contains the tree
- * structure.
+ * structure. Every change is reported to the tree as an event about the affected
+ * node only, so the JTree keeps its expansion and selection.
  * 
  * @author	Paweł Dąbrowski
  * @since	2016-06-02
@@ -29,6 +32,9 @@ public class Model implements Serializable {
 	private final Map<String, Category> categories;
 	private final DefaultMutableTreeNode root;
 	private final DefaultTreeModel treeModel;
+	private transient List<ModelListener> listeners;
+	// tree nodes of Categories and Channels, found by identity instead of by position
+	private transient Map<Object, DefaultMutableTreeNode> nodes;
 
 	/**
 	 * Model constructor - initializes whole TreeModel and makes a Map of Categories.
@@ -37,6 +43,79 @@ public class Model implements Serializable {
 		categories = new HashMap<String, Category>();
 		root = new DefaultMutableTreeNode("Root");
 		treeModel = new DefaultTreeModel(root);
+		listeners = new CopyOnWriteArrayList<ModelListener>();
+		nodes = new IdentityHashMap<Object, DefaultMutableTreeNode>();
+	}
+
+	/**
+	 * @param listener Listener to notify about all the changes of the Model.
+	 */
+	public void addModelListener(final ModelListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * @param listener Listener which shouldn't be notified anymore.
+	 */
+	public void removeModelListener(final ModelListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Called by a Channel which fetched new entries.
+	 * 
+	 * @param channel Refreshed Channel.
+	 */
+	void fireEntriesUpdated(final Channel channel) {
+		String categoryName = getCategoryName(channel);
+		// removed in the meantime
+		if (categoryName == null) return;
+
+		for (ModelListener listener : listeners) {
+			listener.entriesUpdated(categoryName, channel);
+		}
+	}
+
+	/**
+	 * Called by a Channel which became broken or works again.
+	 * 
+	 * @param channel Channel whose state changed.
+	 * @see Channel#isBroken()
+	 */
+	void fireStatusChanged(final Channel channel) {
+		String categoryName = getCategoryName(channel);
+		// removed in the meantime
+		if (categoryName == null) return;
+
+		for (ModelListener listener : listeners) {
+			listener.channelStatusChanged(categoryName, channel);
+		}
+	}
+
+	/**
+	 * @return Name of the Category of the Channel, null if it doesn't belong to the Model.
+	 */
+	private synchronized String getCategoryName(final Channel channel) {
+		for (Category category : categories.values()) {
+			if (category.getChannel(channel.getName()) == channel) {
+				return category.getName();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Tells the tree to draw the node of the Channel again, e.g. because it became broken.
+	 * Must be called on the Event Dispatch Thread.
+	 * 
+	 * @param channel Channel whose node changed.
+	 */
+	public synchronized void channelNodeChanged(final Channel channel) {
+		DefaultMutableTreeNode node = nodes.get(channel);
+		// removed in the meantime
+		if (node != null) {
+			treeModel.nodeChanged(node);
+		}
 	}
 
 	////////////////////////////////////////////
@@ -49,15 +128,16 @@ public class Model implements Serializable {
 	 * @param name Name of the Category as String.
 	 * @return True if added successfull, false otherwise.
 	 */
-	public boolean addNewCategory(String name) {
+	public synchronized boolean addNewCategory(String name) {
 		if (categories.get(name) == null) {
 			Category category = new Category(name);
 			DefaultMutableTreeNode node = new DefaultMutableTreeNode(name);
 			categories.put(name, category);
-			root.add(node);
-			category.setIndex(root.getIndex(node));
-
-			treeModel.reload();
+			nodes.put(category, node);
+			treeModel.insertNodeInto(node, root, root.getChildCount());
+			for (ModelListener listener : listeners) {
+				listener.categoryAdded(name);
+			}
 			return true;
 		}
 		else {
@@ -72,14 +152,17 @@ public class Model implements Serializable {
 	 * @param newName New name of the category.
 	 * @return True if renamed successfully, false otherwise.
 	 */
-	public boolean setCategoryName(String oldName, String newName) {
+	public synchronized boolean setCategoryName(String oldName, String newName) {
 		Category category = categories.get(oldName);
 		if (category != null && categories.get(newName) == null) {
 			categories.put(newName, categories.remove(oldName));
 			category.setName(newName);
-			DefaultMutableTreeNode categoryNode = (DefaultMutableTreeNode) root.getChildAt(category.getIndex());
+			DefaultMutableTreeNode categoryNode = nodes.get(category);
 			categoryNode.setUserObject(newName);
-			treeModel.reload();
+			treeModel.nodeChanged(categoryNode);
+			for (ModelListener listener : listeners) {
+				listener.categoryRenamed(oldName, newName);
+			}
 			return true;
 		}
 		else {
@@ -95,12 +178,14 @@ public class Model implements Serializable {
 	 * @param categoryName Name of category to remove.
 	 * @return True if successfully removed, false otherwise.
 	 */
-	public boolean removeCategory(String categoryName) {
+	public synchronized boolean removeCategory(String categoryName) {
 		Category category = categories.get(categoryName);
-		if (category.getChannelsMap().isEmpty()) {
+		if (category != null && category.getChannelsMap().isEmpty()) {
 			categories.remove(categoryName);
-			treeModel.removeNodeFromParent((DefaultMutableTreeNode) root.getChildAt(category.getIndex()));
-			treeModel.reload();
+			treeModel.removeNodeFromParent(nodes.remove(category));
+			for (ModelListener listener : listeners) {
+				listener.categoryRemoved(categoryName);
+			}
 			return true;
 		}
 		else {
@@ -111,7 +196,7 @@ public class Model implements Serializable {
 	/**
 	 * @return String array with names of categories.
 	 */
-	public String[] getCategoriesList() {
+	public synchronized String[] getCategoriesList() {
 		List<String> categoriesList = new ArrayList<String>();
 		for (Entry<String, Category> category : categories.entrySet()) {
 			categoriesList.add(category.getKey());
@@ -144,15 +229,27 @@ public class Model implements Serializable {
 	 * @throws IllegalArgumentException Thrown when the URL given content isn't in XML format.
 	 */
 	public boolean addNewChannel(final String channelName, final String channelUrl, final String categoryName) throws IllegalArgumentException, FeedException, IOException{
-		Category category = categories.get(categoryName);
 		Channel channel = new Channel(channelName, channelUrl);
-		if (categories.get(categoryName).getChannelsMap().get(channelName) == null) {
+		return addChannel(channel, categoryName);
+	}
+
+	/**
+	 * Adds an existing Channel to a selected Category.
+	 * 
+	 * @param channel Channel to add.
+	 * @param categoryName Name of category to which the Channel should be added.
+	 * @return True if added succesfully, false otherwise
+	 */
+	public synchronized boolean addChannel(final Channel channel, final String categoryName) {
+		Category category = categories.get(categoryName);
+		String channelName = channel.getName();
+		if (category != null && category.getChannelsMap().get(channelName) == null) {
 			category.addChannel(channel);
-			DefaultMutableTreeNode categoryNode = (DefaultMutableTreeNode) root.getChildAt(category.getIndex());
-			DefaultMutableTreeNode channelNode = new DefaultMutableTreeNode(channelName);
-			treeModel.insertNodeInto(channelNode, categoryNode, categoryNode.getChildCount());
-			channel.setIndex(categoryNode.getIndex(channelNode));
-			treeModel.reload();
+			channel.setOwner(this);
+			insertChannelNode(channel, category);
+			for (ModelListener listener : listeners) {
+				listener.channelAdded(categoryName, channel);
+			}
 			return true;
 		}
 		else {
@@ -160,6 +257,77 @@ public class Model implements Serializable {
 		}
 	}
 
+	/**
+	 * Adds many Channels at once, creating the Categories which don't exist yet.
+	 * The tree gets one event per Category instead of one per Channel, so importing
+	 * thousands of subscriptions doesn't make it lay itself out thousands of times.
+	 * Channels whose names are already taken in their Category are left out.
+	 * 
+	 * @param channels Channels to add by the names of their Categories.
+	 * @return Added Channels.
+	 */
+	public synchronized List<Channel> addChannels(final Map<String, List<Channel>> channels) {
+		List<Channel> added = new ArrayList<Channel>();
+		int firstCategory = root.getChildCount();
+		for (Entry<String, List<Channel>> entry : channels.entrySet()) {
+			String categoryName = entry.getKey();
+			Category category = categories.get(categoryName);
+			boolean isNew = category == null;
+			if (isNew) {
+				category = new Category(categoryName);
+				DefaultMutableTreeNode node = new DefaultMutableTreeNode(categoryName);
+				categories.put(categoryName, category);
+				nodes.put(category, node);
+				root.add(node);
+				for (ModelListener listener : listeners) {
+					listener.categoryAdded(categoryName);
+				}
+			}
+
+			DefaultMutableTreeNode categoryNode = nodes.get(category);
+			int firstIndex = categoryNode.getChildCount();
+			for (Channel channel : entry.getValue()) {
+				if (category.getChannel(channel.getName()) != null) continue;
+				category.addChannel(channel);
+				channel.setOwner(this);
+				DefaultMutableTreeNode channelNode = new DefaultMutableTreeNode(channel.getName());
+				nodes.put(channel, channelNode);
+				categoryNode.add(channelNode);
+				added.add(channel);
+				for (ModelListener listener : listeners) {
+					listener.channelAdded(categoryName, channel);
+				}
+			}
+			// children of a new Category come with it
+			if (!isNew && categoryNode.getChildCount() > firstIndex) {
+				treeModel.nodesWereInserted(categoryNode, range(firstIndex, categoryNode.getChildCount()));
+			}
+		}
+		if (root.getChildCount() > firstCategory) {
+			treeModel.nodesWereInserted(root, range(firstCategory, root.getChildCount()));
+		}
+		return added;
+	}
+
+	private static int[] range(final int from, final int to) {
+		int[] indices = new int[to - from];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = from + i;
+		}
+		return indices;
+	}
+
+	/**
+	 * @return List of all Channels from all Categories.
+	 */
+	public synchronized List<Channel> getAllChannels() {
+		List<Channel> channels = new ArrayList<Channel>();
+		for (Category category : categories.values()) {
+			channels.addAll(category.getChannelsMap().values());
+		}
+		return channels;
+	}
+
 	/**
 	 * Gets a specified Channel and its contents from selected Category.
 	 * 
@@ -180,16 +348,19 @@ public class Model implements Serializable {
 	 * @param newName New name for the Category.
 	 * @return True if renamed succesfully, false otherwise.
 	 */
-	public boolean setChannelName(String categoryName, String oldName, String newName) {
+	public synchronized boolean setChannelName(String categoryName, String oldName, String newName) {
 		Category category = categories.get(categoryName);
 		if (category != null) {
 			Channel channel = category.getChannelsMap().get(oldName);
 			if (channel != null && categories.get(categoryName).getChannelsMap().get(newName) == null) {
 				category.getChannelsMap().put(newName, category.getChannelsMap().remove(oldName));
 				channel.setName(newName);
-				DefaultMutableTreeNode channelNode = (DefaultMutableTreeNode) root.getChildAt(category.getIndex()).getChildAt(channel.getIndex());
+				DefaultMutableTreeNode channelNode = nodes.get(channel);
 				channelNode.setUserObject(newName);
-				treeModel.reload();
+				treeModel.nodeChanged(channelNode);
+				for (ModelListener listener : listeners) {
+					listener.channelRenamed(categoryName, oldName, newName);
+				}
 				return true;
 			}
 			else {
@@ -209,13 +380,18 @@ public class Model implements Serializable {
 	 * @param newUrl New URL of RSS channel.
 	 * @return True if changed the URL successfully, false otherwise.
 	 */
-	public boolean setChannelUrl(String categoryName, String channelName, String newUrl) {
+	public synchronized boolean setChannelUrl(String categoryName, String channelName, String newUrl) {
 		Category category = categories.get(categoryName);
 		if (category != null) {
 			Channel channel = category.getChannelsMap().get(channelName);
 			if (channel != null) {
 				try {
 					channel.setUrl(newUrl);
+					// no longer marked as broken
+					treeModel.nodeChanged(nodes.get(channel));
+					for (ModelListener listener : listeners) {
+						listener.channelUrlChanged(categoryName, channelName, newUrl);
+					}
 					return true;
 				} 
 				catch (MalformedURLException e) {
@@ -239,20 +415,20 @@ public class Model implements Serializable {
 	 * @param newCategoryName Name of new Category.
 	 * @return True if moved the Channel successfully, false otherwise.
 	 */
-	public boolean changeChannelCategory(String channelName, String oldCategoryName, String newCategoryName) {
+	public synchronized boolean changeChannelCategory(String channelName, String oldCategoryName, String newCategoryName) {
 		Category oldCategory = categories.get(oldCategoryName);
 		Category newCategory = categories.get(newCategoryName);
 		if (oldCategory != null && newCategory != null) {
-			Channel channel = oldCategory.getChannelsMap().remove(channelName);
-			if (channel != null && categories.get(newCategoryName).getChannelsMap().get(channelName) == null) {
-				treeModel.removeNodeFromParent((DefaultMutableTreeNode) root.getChildAt(oldCategory.getIndex()).getChildAt(channel.getIndex()));
+			// checked before removing, so a name conflict doesn't lose the Channel
+			if (oldCategory.getChannel(channelName) != null && newCategory.getChannel(channelName) == null) {
+				Channel channel = oldCategory.removeChannel(channelName);
+				removeChannelNode(channel);
 
 				newCategory.addChannel(channel);
-				DefaultMutableTreeNode categoryNode = (DefaultMutableTreeNode) root.getChildAt(newCategory.getIndex());
-				DefaultMutableTreeNode channelNode = new DefaultMutableTreeNode(channelName);
-				treeModel.insertNodeInto(channelNode, categoryNode, categoryNode.getChildCount());
-				channel.setIndex(categoryNode.getIndex(channelNode));
-				treeModel.reload();
+				insertChannelNode(channel, newCategory);
+				for (ModelListener listener : listeners) {
+					listener.channelMoved(channelName, oldCategoryName, newCategoryName);
+				}
 
 				return true;
 			}
@@ -272,13 +448,16 @@ public class Model implements Serializable {
 	 * @param categoryName Name of category containing specified channel.
 	 * @return True if removed successfully, false otherwise.
 	 */
-	public boolean removeChannel(String channelName, String categoryName) {
+	public synchronized boolean removeChannel(String channelName, String categoryName) {
 		Category category = categories.get(categoryName);
 		if (category != null) {
-			Channel channel = category.getChannelsMap().remove(channelName);
+			Channel channel = category.removeChannel(channelName);
 			if (channel != null) {
-				treeModel.removeNodeFromParent((DefaultMutableTreeNode) root.getChildAt(category.getIndex()).getChildAt(channel.getIndex()));
-				treeModel.reload();
+				removeChannelNode(channel);
+				channel.setOwner(null);
+				for (ModelListener listener : listeners) {
+					listener.channelRemoved(categoryName, channel);
+				}
 				return true;
 			}
 			else {
@@ -290,6 +469,21 @@ public class Model implements Serializable {
 		}
 	}
 
+	/**
+	 * Adds a node of the Channel at the end of its Category. Only the new node is reported
+	 * to the tree, so the rest of the tree keeps its expansion and selection.
+	 */
+	private void insertChannelNode(final Channel channel, final Category category) {
+		DefaultMutableTreeNode categoryNode = nodes.get(category);
+		DefaultMutableTreeNode channelNode = new DefaultMutableTreeNode(channel.getName());
+		nodes.put(channel, channelNode);
+		treeModel.insertNodeInto(channelNode, categoryNode, categoryNode.getChildCount());
+	}
+
+	private void removeChannelNode(final Channel channel) {
+		treeModel.removeNodeFromParent(nodes.remove(channel));
+	}
+
 	////////////////////////////////////////////////////////
 	/////////////////// FIELDS GETTERS /////////////////////
 	////////////////////////////////////////////////////////
@@ -305,7 +499,6 @@ public class Model implements Serializable {
 	 * @return DefaultTreeModel Whole tree model.
 	 */
 	public DefaultTreeModel getTreeModel() {
-		treeModel.reload();
 		return treeModel;
 	}
 
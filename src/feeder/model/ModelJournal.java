@@ -0,0 +1,518 @@
+package feeder.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import com.rometools.rome.feed.synd.SyndEntry;
+
+/**
+ * <b>ModelJournal</b> makes every change of the Model durable as soon as it happens,
+ * without rewriting the whole Model. Changes are appended to a journal file and synced
+ * to the disk in batches (at most one sync per flush interval). When the journal grows
+ * too big, it's compacted in the background: a snapshot of the Model is written
+ * by ModelStore and the journal is started from scratch.
+ * <p>
+ * Each record is prefixed with its length and checksum, so a record torn by a crash
+ * is detected and dropped when the journal is replayed. A refresh journals only
+ * the entries it brought, not the whole feed of the Channel.
+ *
+ * @version	1.0
+ */
+public class ModelJournal implements ModelListener {
+	/** Default journal file. */
+	public static final String JOURNAL_FILE = "journal.log";
+	private static final long FLUSH_INTERVAL = 1000;
+	private static final long COMPACT_THRESHOLD = 4 * 1024 * 1024;
+
+	private static final byte ADD_CATEGORY = 1;
+	private static final byte RENAME_CATEGORY = 2;
+	private static final byte REMOVE_CATEGORY = 3;
+	private static final byte ADD_CHANNEL = 4;
+	private static final byte RENAME_CHANNEL = 5;
+	private static final byte SET_CHANNEL_URL = 6;
+	private static final byte MOVE_CHANNEL = 7;
+	private static final byte REMOVE_CHANNEL = 8;
+	private static final byte ENTRIES_ADDED = 9;
+
+	private final Model model;
+	private final File dataFile;
+	private final File entriesFile;
+	private final File journalFile;
+	private final ScheduledExecutorService executor;
+	private FileOutputStream file;
+	private DataOutputStream output;
+	private long size;
+	private boolean dirty = false;
+	private boolean compactionPending = false;
+	private boolean closed = false;
+
+	/**
+	 * Opens the journal for appending and starts listening to the Model.
+	 * The Model should already contain the snapshot and the replayed journal.
+	 *
+	 * @param model Model to journal.
+	 * @param dataFile Snapshot file with subscriptions.
+	 * @param entriesFile Snapshot file with cached entries.
+	 * @param journalFile Journal file.
+	 * @throws IOException Thrown when the journal can't be opened.
+	 * @see #replay(Model, File)
+	 */
+	public ModelJournal(final Model model, final File dataFile, final File entriesFile, final File journalFile) throws IOException {
+		this.model = model;
+		this.dataFile = dataFile;
+		this.entriesFile = entriesFile;
+		this.journalFile = journalFile;
+
+		open();
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "feeder-journal");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		executor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					flush();
+				}
+				catch (IOException e) {
+					System.err.println("Nie można zapisać dziennika " + journalFile + ": " + e.getMessage());
+				}
+			}
+		}, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+
+		// segments left by a compaction which didn't finish
+		if (!rotatedSegments(journalFile).isEmpty()) {
+			scheduleCompaction();
+		}
+		model.addModelListener(this);
+	}
+
+	////////////////////////////////////////////
+	////////////// MODEL LISTENER //////////////
+	////////////////////////////////////////////
+
+	@Override
+	public void categoryAdded(String name) {
+		append(record(ADD_CATEGORY, name));
+	}
+
+	@Override
+	public void categoryRenamed(String oldName, String newName) {
+		append(record(RENAME_CATEGORY, oldName, newName));
+	}
+
+	@Override
+	public void categoryRemoved(String name) {
+		append(record(REMOVE_CATEGORY, name));
+	}
+
+	@Override
+	public void channelAdded(String categoryName, Channel channel) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream record = new DataOutputStream(bytes);
+			record.writeByte(ADD_CHANNEL);
+			ModelStore.writeString(record, categoryName);
+			ModelStore.writeChannel(record, channel);
+			append(bytes.toByteArray());
+		}
+		catch (IOException e) {
+			// can't happen when writing to memory
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void channelRenamed(String categoryName, String oldName, String newName) {
+		append(record(RENAME_CHANNEL, categoryName, oldName, newName));
+	}
+
+	@Override
+	public void channelUrlChanged(String categoryName, String channelName, String newUrl) {
+		append(record(SET_CHANNEL_URL, categoryName, channelName, newUrl));
+	}
+
+	@Override
+	public void channelMoved(String channelName, String oldCategoryName, String newCategoryName) {
+		append(record(MOVE_CHANNEL, channelName, oldCategoryName, newCategoryName));
+	}
+
+	@Override
+	public void channelRemoved(String categoryName, Channel channel) {
+		append(record(REMOVE_CHANNEL, categoryName, channel.getName()));
+	}
+
+	@Override
+	public void entriesUpdated(String categoryName, Channel channel) {
+		List<SyndEntry> added = channel.getNewEntries();
+		if (added == null || added.isEmpty()) return;
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream record = new DataOutputStream(bytes);
+			record.writeByte(ENTRIES_ADDED);
+			ModelStore.writeString(record, categoryName);
+			ModelStore.writeString(record, channel.getName());
+			ModelStore.writeEntries(record, added);
+			append(bytes.toByteArray());
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public void channelStatusChanged(String categoryName, Channel channel) {
+		// not saved, every start gives broken Channels another chance
+	}
+
+	////////////////////////////////////////////
+	///////////// WRITING & SYNCING ////////////
+	////////////////////////////////////////////
+
+	private static byte[] record(final byte type, final String... values) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream record = new DataOutputStream(bytes);
+			record.writeByte(type);
+			for (String value : values) {
+				ModelStore.writeString(record, value);
+			}
+			return bytes.toByteArray();
+		}
+		catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Appends the record to the buffer, it reaches the disk with the next flush.
+	 */
+	private synchronized void append(final byte[] record) {
+		if (closed) return;
+
+		try {
+			CRC32 crc = new CRC32();
+			crc.update(record);
+			output.writeInt(record.length);
+			output.writeInt((int) crc.getValue());
+			output.write(record);
+			size += record.length + 8;
+			dirty = true;
+		}
+		catch (IOException e) {
+			System.err.println("Nie można zapisać dziennika " + journalFile + ": " + e.getMessage());
+		}
+
+		if (size > COMPACT_THRESHOLD) {
+			scheduleCompaction();
+		}
+	}
+
+	/**
+	 * Writes buffered records and syncs them to the disk.
+	 *
+	 * @throws IOException Thrown when the journal can't be written.
+	 */
+	public synchronized void flush() throws IOException {
+		if (!dirty || closed) return;
+		output.flush();
+		file.getChannel().force(false);
+		dirty = false;
+	}
+
+	/**
+	 * Flushes the journal and stops the background work. Further changes are not journaled.
+	 *
+	 * @throws IOException Thrown when the journal can't be written.
+	 */
+	public void close() throws IOException {
+		model.removeModelListener(this);
+		executor.shutdown();
+		synchronized (this) {
+			flush();
+			closed = true;
+			output.close();
+		}
+	}
+
+	private void open() throws IOException {
+		file = new FileOutputStream(journalFile, true);
+		output = new DataOutputStream(new BufferedOutputStream(file));
+		size = journalFile.length();
+	}
+
+	////////////////////////////////////////////
+	//////////////// COMPACTION ////////////////
+	////////////////////////////////////////////
+
+	private synchronized void scheduleCompaction() {
+		if (compactionPending || closed) return;
+		compactionPending = true;
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					compact();
+				}
+				catch (IOException e) {
+					// the journal keeps growing, the next change tries again
+					System.err.println("Nie można zapisać listy kanałów: " + e.getMessage());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Writes a snapshot of the Model and drops the journal records it contains.
+	 * The journal is switched to a new file at the moment the snapshot is taken,
+	 * so the changes made while the snapshot is written are kept.
+	 *
+	 * @throws IOException Thrown when the snapshot can't be written.
+	 */
+	public void compact() throws IOException {
+		ModelStore.Snapshot snapshot;
+		List<File> segments;
+		synchronized (model) {
+			snapshot = ModelStore.capture(model);
+			synchronized (this) {
+				compactionPending = false;
+				if (closed) return;
+				rotate();
+			}
+			segments = rotatedSegments(journalFile);
+		}
+
+		ModelStore.write(snapshot, dataFile, entriesFile);
+		for (File segment : segments) {
+			segment.delete();
+		}
+	}
+
+	/**
+	 * Closes the current journal file, renames it to the next segment and opens an empty one.
+	 */
+	private void rotate() throws IOException {
+		output.flush();
+		file.getChannel().force(false);
+		output.close();
+
+		List<File> segments = rotatedSegments(journalFile);
+		int next = segments.isEmpty() ? 1 : segmentNumber(segments.get(segments.size() - 1)) + 1;
+		ModelStore.replace(journalFile, new File(journalFile.getPath() + "." + next));
+		open();
+		dirty = false;
+	}
+
+	/**
+	 * @return Segments of the journal which weren't compacted yet, oldest first.
+	 */
+	private static List<File> rotatedSegments(final File journalFile) {
+		final String prefix = journalFile.getName() + ".";
+		File directory = journalFile.getAbsoluteFile().getParentFile();
+		File[] files = directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.startsWith(prefix) && name.substring(prefix.length()).matches("\\d+");
+			}
+		});
+
+		List<File> segments = new ArrayList<File>();
+		if (files != null) {
+			Collections.addAll(segments, files);
+		}
+		Collections.sort(segments, new Comparator<File>() {
+			public int compare(File first, File second) {
+				return Integer.compare(segmentNumber(first), segmentNumber(second));
+			}
+		});
+		return segments;
+	}
+
+	private static int segmentNumber(final File segment) {
+		String name = segment.getName();
+		return Integer.parseInt(name.substring(name.lastIndexOf('.') + 1));
+	}
+
+	////////////////////////////////////////////
+	////////////////// REPLAY //////////////////
+	////////////////////////////////////////////
+
+	/**
+	 * Applies all the journaled changes to the Model loaded from the snapshot.
+	 * Records that don't apply anymore (e.g. already contained in the snapshot) are skipped.
+	 * A torn, corrupted or unknown record ends the valid part of the journal, the rest is removed.
+	 * Journaled entries are added to the feeds from the snapshot when they are loaded.
+	 *
+	 * @param model Model loaded by ModelStore.
+	 * @param journalFile Journal file.
+	 * @throws IOException Thrown when the journal can't be read.
+	 */
+	public static void replay(final Model model, final File journalFile) throws IOException {
+		// entries added to each channel, newest first, applied at the end
+		Map<List<String>, List<SyndEntry>> feeds = new HashMap<List<String>, List<SyndEntry>>();
+
+		for (File segment : rotatedSegments(journalFile)) {
+			replayFile(model, segment, feeds);
+		}
+		if (journalFile.exists()) {
+			long valid = replayFile(model, journalFile, feeds);
+			if (valid < journalFile.length()) {
+				RandomAccessFile torn = new RandomAccessFile(journalFile, "rw");
+				try {
+					torn.setLength(valid);
+				}
+				finally {
+					torn.close();
+				}
+			}
+		}
+
+		for (Entry<List<String>, List<SyndEntry>> feed : feeds.entrySet()) {
+			Category category = model.getCategoriesMap().get(feed.getKey().get(0));
+			Channel channel = category != null ? category.getChannel(feed.getKey().get(1)) : null;
+			if (channel == null) continue;
+			channel.restoreEntries(feed.getValue());
+		}
+	}
+
+	/**
+	 * @return Length of the valid part of the file.
+	 */
+	private static long replayFile(final Model model, final File journal, final Map<List<String>, List<SyndEntry>> feeds) throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)));
+		long valid = 0;
+		try {
+			while (true) {
+				byte[] record;
+				try {
+					int length = input.readInt();
+					int checksum = input.readInt();
+					if (length < 1 || length > journal.length()) break;
+					record = new byte[length];
+					input.readFully(record);
+					CRC32 crc = new CRC32();
+					crc.update(record);
+					if ((int) crc.getValue() != checksum) break;
+				}
+				catch (EOFException e) {
+					break;
+				}
+
+				try {
+					apply(model, new DataInputStream(new ByteArrayInputStream(record)), feeds);
+				}
+				catch (RuntimeException e) {
+					// e.g. change of a channel which doesn't exist anymore
+				}
+				catch (IOException e) {
+					// unknown or corrupted, like a torn record - nothing after it can be trusted
+					break;
+				}
+				valid += record.length + 8;
+			}
+		}
+		finally {
+			input.close();
+		}
+		return valid;
+	}
+
+	private static void apply(final Model model, final DataInputStream record, final Map<List<String>, List<SyndEntry>> feeds) throws IOException {
+		byte type = record.readByte();
+		switch (type) {
+			case ADD_CATEGORY:
+				model.addNewCategory(ModelStore.readString(record));
+				break;
+			case RENAME_CATEGORY:
+				model.setCategoryName(ModelStore.readString(record), ModelStore.readString(record));
+				break;
+			case REMOVE_CATEGORY:
+				model.removeCategory(ModelStore.readString(record));
+				break;
+			case ADD_CHANNEL: {
+				String categoryName = ModelStore.readString(record);
+				model.addChannel(ModelStore.readChannel(record), categoryName);
+				break;
+			}
+			case RENAME_CHANNEL: {
+				String categoryName = ModelStore.readString(record);
+				String oldName = ModelStore.readString(record);
+				String newName = ModelStore.readString(record);
+				model.setChannelName(categoryName, oldName, newName);
+				moveFeed(feeds, categoryName, oldName, categoryName, newName);
+				break;
+			}
+			case SET_CHANNEL_URL:
+				model.setChannelUrl(ModelStore.readString(record), ModelStore.readString(record), ModelStore.readString(record));
+				break;
+			case MOVE_CHANNEL: {
+				String channelName = ModelStore.readString(record);
+				String oldCategoryName = ModelStore.readString(record);
+				String newCategoryName = ModelStore.readString(record);
+				model.changeChannelCategory(channelName, oldCategoryName, newCategoryName);
+				moveFeed(feeds, oldCategoryName, channelName, newCategoryName, channelName);
+				break;
+			}
+			case REMOVE_CHANNEL: {
+				String categoryName = ModelStore.readString(record);
+				String channelName = ModelStore.readString(record);
+				model.removeChannel(channelName, categoryName);
+				feeds.remove(key(categoryName, channelName));
+				break;
+			}
+			case ENTRIES_ADDED: {
+				String categoryName = ModelStore.readString(record);
+				String channelName = ModelStore.readString(record);
+				List<String> key = key(categoryName, channelName);
+				List<SyndEntry> added = feeds.get(key);
+				if (added == null) {
+					added = new ArrayList<SyndEntry>();
+					feeds.put(key, added);
+				}
+				added.addAll(0, ModelStore.readEntries(record));
+				break;
+			}
+			default:
+				throw new IOException("Nieznany rekord w dzienniku: " + type);
+		}
+	}
+
+	private static void moveFeed(final Map<List<String>, List<SyndEntry>> feeds, final String oldCategory, final String oldName,
+			final String newCategory, final String newName) {
+		List<SyndEntry> added = feeds.remove(key(oldCategory, oldName));
+		if (added != null) {
+			feeds.put(key(newCategory, newName), added);
+		}
+	}
+
+	private static List<String> key(final String categoryName, final String channelName) {
+		List<String> key = new ArrayList<String>(2);
+		key.add(categoryName);
+		key.add(channelName);
+		return key;
+	}
+}
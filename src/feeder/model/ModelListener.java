@@ -0,0 +1,83 @@
+package feeder.model;
+
+/**
+ * <b>ModelListener</b> is notified about every change of the Model - both the ones made
+ * by the user (categories and channels) and new entries fetched by the Channels.
+ * Methods are called after the change was made, on the thread which made it,
+ * while holding the Model lock (except {@link #entriesUpdated(String, Channel)},
+ * called under the fetch lock of the Channel, and {@link #channelStatusChanged(String, Channel)}).
+ *
+ * @version	1.0
+ */
+public interface ModelListener {
+	/**
+	 * @param name Name of the added Category.
+	 */
+	void categoryAdded(String name);
+
+	/**
+	 * @param oldName Old name of the Category.
+	 * @param newName New name of the Category.
+	 */
+	void categoryRenamed(String oldName, String newName);
+
+	/**
+	 * @param name Name of the removed Category.
+	 */
+	void categoryRemoved(String name);
+
+	/**
+	 * @param categoryName Category to which the Channel was added.
+	 * @param channel Added Channel.
+	 */
+	void channelAdded(String categoryName, Channel channel);
+
+	/**
+	 * @param categoryName Category of the Channel.
+	 * @param oldName Old name of the Channel.
+	 * @param newName New name of the Channel.
+	 */
+	void channelRenamed(String categoryName, String oldName, String newName);
+
+	/**
+	 * @param categoryName Category of the Channel.
+	 * @param channelName Name of the Channel.
+	 * @param newUrl New URL of the Channel.
+	 */
+	void channelUrlChanged(String categoryName, String channelName, String newUrl);
+
+	/**
+	 * @param channelName Name of the moved Channel.
+	 * @param oldCategoryName Category from which the Channel was moved.
+	 * @param newCategoryName Category to which the Channel was moved.
+	 */
+	void channelMoved(String channelName, String oldCategoryName, String newCategoryName);
+
+	/**
+	 * @param categoryName Category from which the Channel was removed.
+	 * @param channel Removed Channel.
+	 */
+	void channelRemoved(String categoryName, Channel channel);
+
+	/**
+	 * Called when a refresh brought a new version of the feed, possibly from a background thread.
+	 * It's called while the refresh still holds the fetch lock of the Channel (but not the Channel
+	 * or the Model lock), so {@link Channel#getNewEntries()} are the entries of this very refresh
+	 * and the next refresh of the Channel waits until all the listeners return. A listener may
+	 * take the Channel, the Model or its own lock, but mustn't wait for another refresh of the Channel.
+	 *
+	 * @param categoryName Category of the Channel.
+	 * @param channel Refreshed Channel.
+	 */
+	void entriesUpdated(String categoryName, Channel channel);
+
+	/**
+	 * Called when a Channel became broken or works again, possibly from a background thread.
+	 * Called after the fetch lock of the Channel was released, without holding any lock.
+	 *
+	 * @param categoryName Category of the Channel.
+	 * @param channel Channel whose state changed.
+	 * @see Channel#isBroken()
+	 */
+	void channelStatusChanged(String categoryName, Channel channel);
+}
@@ -0,0 +1,448 @@
+package feeder.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+
+import com.rometools.rome.feed.synd.SyndContent;
+import com.rometools.rome.feed.synd.SyndContentImpl;
+import com.rometools.rome.feed.synd.SyndEntry;
+import com.rometools.rome.feed.synd.SyndEntryImpl;
+import com.rometools.rome.feed.synd.SyndFeed;
+import com.rometools.rome.feed.synd.SyndFeedImpl;
+
+/**
+ * <b>ModelStore</b> saves and loads the Model in a compact, versioned binary format.
+ * Subscriptions (categories, channels and their HTTP validators) are kept in one small file
+ * which is read at startup. Cached entries are kept in a separate, compressed file,
+ * so they can be loaded in the background and don't slow the startup down.
+ * Files written by the first versions of Feeder (serialized Model) are migrated automatically.
+ *
+ * @version	1.0
+ */
+public final class ModelStore {
+	/** Default file with subscriptions. */
+	public static final String DATA_FILE = "data.dat";
+	/** Default file with cached entries. */
+	public static final String ENTRIES_FILE = "entries.dat";
+	private static final int DATA_MAGIC = 0x46454544; // "FEED"
+	private static final int ENTRIES_MAGIC = 0x46454E54; // "FENT"
+	private static final int VERSION = 1;
+	// first bytes of a file written with ObjectOutputStream
+	private static final int SERIALIZATION_MAGIC = 0xACED;
+	private static final String LEGACY_SUFFIX = ".old";
+	private static final String TEMP_SUFFIX = ".tmp";
+
+	private ModelStore() {
+	}
+
+	/**
+	 * Loads the subscriptions. Entries are not loaded, see {@link #loadEntries(Model, File)}.
+	 * If the file was written by an old version of the application, it's migrated: the Model
+	 * (including its entries) is read, the old file is copied aside, both new files are written
+	 * and the new files are loaded as usual. The new file replaces the old one atomically,
+	 * so if the migration fails, the old file is still there for the next start.
+	 *
+	 * @param dataFile File with subscriptions.
+	 * @param entriesFile File with cached entries, written when migrating.
+	 * @return Loaded Model.
+	 * @throws IOException Thrown when the file can't be read or is corrupted.
+	 */
+	public static Model load(final File dataFile, final File entriesFile) throws IOException {
+		if (isLegacy(dataFile)) {
+			Model model = loadLegacy(dataFile);
+			File backup = new File(dataFile.getPath() + LEGACY_SUFFIX);
+			Files.copy(dataFile.toPath(), backup.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			save(model, dataFile, entriesFile);
+		}
+
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(dataFile)));
+		try {
+			readHeader(input, DATA_MAGIC);
+			Model model = new Model();
+			int categories = input.readInt();
+			for (int i = 0; i < categories; i++) {
+				String categoryName = readString(input);
+				model.addNewCategory(categoryName);
+				int channels = input.readInt();
+				for (int j = 0; j < channels; j++) {
+					model.addChannel(readChannel(input), categoryName);
+				}
+			}
+			return model;
+		}
+		finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Loads cached entries into the Channels of the Model. Channels which already fetched
+	 * their feeds in the meantime are left untouched. Safe to call from a background thread.
+	 *
+	 * @param model Model loaded with {@link #load(File, File)}.
+	 * @param entriesFile File with cached entries.
+	 * @throws IOException Thrown when the file can't be read or is corrupted.
+	 */
+	public static void loadEntries(final Model model, final File entriesFile) throws IOException {
+		if (!entriesFile.exists()) return;
+
+		DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(entriesFile))));
+		try {
+			readHeader(input, ENTRIES_MAGIC);
+
+			Map<String, List<Channel>> channelsByUrl = new HashMap<String, List<Channel>>();
+			for (Channel channel : model.getAllChannels()) {
+				List<Channel> channels = channelsByUrl.get(channel.getUrl());
+				if (channels == null) {
+					channels = new ArrayList<Channel>(1);
+					channelsByUrl.put(channel.getUrl(), channels);
+				}
+				channels.add(channel);
+			}
+
+			while (true) {
+				String url;
+				try {
+					url = readString(input);
+				}
+				catch (EOFException e) {
+					break;
+				}
+				SyndFeed feed = readFeed(input);
+
+				List<Channel> channels = channelsByUrl.get(url);
+				if (channels != null) {
+					for (Channel channel : channels) {
+						channel.restoreFeed(feed);
+					}
+				}
+			}
+		}
+		finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Consistent copy of everything saved by ModelStore, taken while holding the Model lock.
+	 * Feeds are immutable once fetched, so the references are enough.
+	 */
+	public static final class Snapshot {
+		private final List<String> categories = new ArrayList<String>();
+		private final List<List<ChannelState>> channels = new ArrayList<List<ChannelState>>();
+
+		private Snapshot() {
+		}
+	}
+
+	/**
+	 * State of a single Channel at the moment of the snapshot, read under the Channel lock,
+	 * so the validators always belong to the feed they were sent with.
+	 */
+	private static final class ChannelState {
+		private final String name;
+		private final String url;
+		private final String etag;
+		private final String lastModified;
+		private final int ttl;
+		private final List<Integer> skipHours;
+		private final List<String> skipDays;
+		private final SyndFeed feed;
+
+		ChannelState(final Channel channel) {
+			synchronized (channel) {
+				name = channel.getName();
+				url = channel.getUrl();
+				etag = channel.getEtag();
+				lastModified = channel.getLastModified();
+				ttl = channel.getTtl();
+				skipHours = channel.getSkipHours();
+				skipDays = channel.getSkipDays();
+				feed = channel.getFeedInput();
+			}
+		}
+	}
+
+	/**
+	 * Takes a consistent copy of the Model, which can then be written without holding any lock.
+	 *
+	 * @param model Model to copy.
+	 * @return Snapshot of the Model.
+	 */
+	public static Snapshot capture(final Model model) {
+		Snapshot snapshot = new Snapshot();
+		synchronized (model) {
+			// tree order, so the user sees the same tree after restart
+			DefaultMutableTreeNode root = model.getRoot();
+			for (int i = 0; i < root.getChildCount(); i++) {
+				DefaultMutableTreeNode categoryNode = (DefaultMutableTreeNode) root.getChildAt(i);
+				Category category = model.getCategoriesMap().get(categoryNode.toString());
+				List<ChannelState> channels = new ArrayList<ChannelState>(categoryNode.getChildCount());
+				for (int j = 0; j < categoryNode.getChildCount(); j++) {
+					channels.add(new ChannelState(category.getChannel(categoryNode.getChildAt(j).toString())));
+				}
+				snapshot.categories.add(category.getName());
+				snapshot.channels.add(channels);
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Saves both subscriptions and cached entries.
+	 *
+	 * @param model Model to save.
+	 * @param dataFile File for subscriptions.
+	 * @param entriesFile File for cached entries.
+	 * @throws IOException Thrown when the files can't be written.
+	 */
+	public static void save(final Model model, final File dataFile, final File entriesFile) throws IOException {
+		write(capture(model), dataFile, entriesFile);
+	}
+
+	/**
+	 * Writes the snapshot. Each file is written to a temporary file, synced to the disk
+	 * and then renamed, so a crash in the middle leaves the previous version intact.
+	 *
+	 * @param snapshot Snapshot to write.
+	 * @param dataFile File for subscriptions.
+	 * @param entriesFile File for cached entries.
+	 * @throws IOException Thrown when the files can't be written.
+	 */
+	public static void write(final Snapshot snapshot, final File dataFile, final File entriesFile) throws IOException {
+		File dataTemp = new File(dataFile.getPath() + TEMP_SUFFIX);
+		FileOutputStream dataStream = new FileOutputStream(dataTemp);
+		DataOutputStream data = new DataOutputStream(new BufferedOutputStream(dataStream));
+		try {
+			data.writeInt(DATA_MAGIC);
+			data.writeInt(VERSION);
+			data.writeInt(snapshot.categories.size());
+			for (int i = 0; i < snapshot.categories.size(); i++) {
+				writeString(data, snapshot.categories.get(i));
+				data.writeInt(snapshot.channels.get(i).size());
+				for (ChannelState channel : snapshot.channels.get(i)) {
+					writeChannel(data, channel);
+				}
+			}
+			data.flush();
+			dataStream.getFD().sync();
+		}
+		finally {
+			data.close();
+		}
+
+		File entriesTemp = new File(entriesFile.getPath() + TEMP_SUFFIX);
+		FileOutputStream entriesStream = new FileOutputStream(entriesTemp);
+		GZIPOutputStream gzip = new GZIPOutputStream(entriesStream);
+		DataOutputStream entries = new DataOutputStream(new BufferedOutputStream(gzip));
+		try {
+			entries.writeInt(ENTRIES_MAGIC);
+			entries.writeInt(VERSION);
+			// the same URL subscribed in many categories is written once
+			Set<String> written = new HashSet<String>();
+			for (List<ChannelState> channels : snapshot.channels) {
+				for (ChannelState channel : channels) {
+					if (channel.feed != null && written.add(channel.url)) {
+						writeString(entries, channel.url);
+						writeFeed(entries, channel.feed);
+					}
+				}
+			}
+			entries.flush();
+			gzip.finish();
+			entriesStream.getFD().sync();
+		}
+		finally {
+			entries.close();
+		}
+
+		replace(dataTemp, dataFile);
+		replace(entriesTemp, entriesFile);
+	}
+
+	/**
+	 * Atomically replaces the target with the source file.
+	 */
+	static void replace(final File source, final File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * @param dataFile File to check.
+	 * @return True if the file was written by Java serialization (Feeder 1.0).
+	 * @throws IOException Thrown when the file can't be read.
+	 */
+	public static boolean isLegacy(final File dataFile) throws IOException {
+		DataInputStream input = new DataInputStream(new FileInputStream(dataFile));
+		try {
+			return input.readUnsignedShort() == SERIALIZATION_MAGIC;
+		}
+		catch (EOFException e) {
+			return false;
+		}
+		finally {
+			input.close();
+		}
+	}
+
+	private static Model loadLegacy(final File dataFile) throws IOException {
+		InputStream file = new FileInputStream(dataFile);
+		try {
+			return (Model) new ObjectInputStream(new BufferedInputStream(file)).readObject();
+		}
+		catch (ClassNotFoundException | ClassCastException e) {
+			throw new IOException("Plik " + dataFile + " jest uszkodzony.", e);
+		}
+		finally {
+			file.close();
+		}
+	}
+
+	private static void readHeader(final DataInputStream input, final int magic) throws IOException {
+		if (input.readInt() != magic) {
+			throw new IOException("Nieznany format pliku.");
+		}
+		int version = input.readInt();
+		if (version > VERSION) {
+			throw new IOException("Plik zapisany przez nowszą wersję programu (" + version + ").");
+		}
+	}
+
+	static void writeChannel(final DataOutputStream output, final Channel channel) throws IOException {
+		writeChannel(output, new ChannelState(channel));
+	}
+
+	private static void writeChannel(final DataOutputStream output, final ChannelState channel) throws IOException {
+		writeString(output, channel.name);
+		writeString(output, channel.url);
+		writeString(output, channel.etag);
+		writeString(output, channel.lastModified);
+		output.writeInt(channel.ttl);
+		output.writeInt(channel.skipHours.size());
+		for (Integer hour : channel.skipHours) {
+			output.writeByte(hour);
+		}
+		output.writeInt(channel.skipDays.size());
+		for (String day : channel.skipDays) {
+			writeString(output, day);
+		}
+	}
+
+	static Channel readChannel(final DataInputStream input) throws IOException {
+		Channel channel = new Channel(readString(input), new URL(readString(input)));
+		String etag = readString(input);
+		String lastModified = readString(input);
+		int ttl = input.readInt();
+		int hours = input.readInt();
+		List<Integer> skipHours = new ArrayList<Integer>(hours);
+		for (int i = 0; i < hours; i++) {
+			skipHours.add((int) input.readByte());
+		}
+		int days = input.readInt();
+		List<String> skipDays = new ArrayList<String>(days);
+		for (int i = 0; i < days; i++) {
+			skipDays.add(readString(input));
+		}
+		channel.restoreState(etag, lastModified, ttl, skipHours, skipDays);
+		return channel;
+	}
+
+	static void writeFeed(final DataOutputStream output, final SyndFeed feed) throws IOException {
+		writeString(output, feed.getTitle());
+		writeEntries(output, feed.getEntries());
+	}
+
+	static void writeEntries(final DataOutputStream output, final List<SyndEntry> entries) throws IOException {
+		output.writeInt(entries.size());
+		for (SyndEntry entry : entries) {
+			writeString(output, entry.getTitle());
+			writeString(output, entry.getLink());
+			writeString(output, entry.getUri());
+			writeString(output, entry.getDescription() != null ? entry.getDescription().getValue() : null);
+			output.writeLong(entry.getPublishedDate() != null ? entry.getPublishedDate().getTime() : News.NO_DATE);
+		}
+	}
+
+	static SyndFeed readFeed(final DataInputStream input) throws IOException {
+		SyndFeed feed = new SyndFeedImpl();
+		feed.setFeedType("rss_2.0");
+		feed.setTitle(readString(input));
+		feed.setEntries(readEntries(input));
+		return feed;
+	}
+
+	static List<SyndEntry> readEntries(final DataInputStream input) throws IOException {
+		int count = input.readInt();
+		List<SyndEntry> entries = new ArrayList<SyndEntry>(count);
+		for (int i = 0; i < count; i++) {
+			SyndEntry entry = new SyndEntryImpl();
+			entry.setTitle(readString(input));
+			entry.setLink(readString(input));
+			entry.setUri(readString(input));
+			String description = readString(input);
+			if (description != null) {
+				SyndContent content = new SyndContentImpl();
+				content.setType("text/html");
+				content.setValue(description);
+				entry.setDescription(content);
+			}
+			long published = input.readLong();
+			if (published != News.NO_DATE) {
+				entry.setPublishedDate(new Date(published));
+			}
+			entries.add(entry);
+		}
+		return entries;
+	}
+
+	/**
+	 * Writes a nullable String of any length (writeUTF is limited to 64 kB).
+	 */
+	static void writeString(final DataOutputStream output, final String value) throws IOException {
+		if (value == null) {
+			output.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+
+	static String readString(final DataInputStream input) throws IOException {
+		int length = input.readInt();
+		if (length < 0) return null;
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -1,6 +1,9 @@
 package feeder.model;
 
 import java.io.Serializable;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 
 /**
  * <b>News</b> is a container class for a single news item.
@@ -11,9 +14,14 @@ import java.io.Serializable;
  */
 public class News implements Serializable {
 	private static final long serialVersionUID = 1L;
+	/** Value of the publication time of news without a date. */
+	public static final long NO_DATE = Long.MIN_VALUE;
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy, HH:mm")
+			.withZone(ZoneId.systemDefault());
 	private String title;
 	private String link;
-	private String date;
+	private String guid;
+	private long publishedTime = NO_DATE;
 	private String channel;
 	private String description;
 
@@ -46,17 +54,48 @@ public class News implements Serializable {
 	}
 
 	/**
-	 * @return News' publication date.
+	 * @return Unique identifier of the news given by the feed (RSS guid, Atom id), may be null.
+	 */
+	public String getGuid() {
+		return guid;
+	}
+
+	/**
+	 * @param guid Unique identifier to set.
+	 */
+	public void setGuid(final String guid) {
+		this.guid = guid;
+	}
+
+	/**
+	 * Formats the publication date for display. The String isn't stored,
+	 * so sorting and filtering can work on the publication time directly.
+	 * 
+	 * @return News' publication date, null if the news has no date.
 	 */
 	public String getDate() {
-		return date;
+		return hasDate() ? DATE_FORMAT.format(Instant.ofEpochMilli(publishedTime)) : null;
+	}
+
+	/**
+	 * @return True if the news has a publication date.
+	 */
+	public boolean hasDate() {
+		return publishedTime != NO_DATE;
+	}
+
+	/**
+	 * @return Publication time in milliseconds since the epoch, NO_DATE if unknown.
+	 */
+	public long getPublishedTime() {
+		return publishedTime;
 	}
 
 	/**
-	 * @param date Publication date to set.
+	 * @param publishedTime Publication time in milliseconds since the epoch (or NO_DATE) to set.
 	 */
-	public void setDate(final String date) {
-		this.date = date;
+	public void setPublishedTime(final long publishedTime) {
+		this.publishedTime = publishedTime;
 	}
 
 	/**
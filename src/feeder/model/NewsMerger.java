@@ -0,0 +1,114 @@
+package feeder.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * <b>NewsMerger</b> combines lists of News sorted by date into one sorted list.
+ * Instead of sorting all the news again, it does a k-way merge using a heap
+ * with one cursor per list, so merging N news from k channels costs O(N log k),
+ * and with a limit only the requested number of news is ever touched.
+ * News without a date are placed after all the dated ones. Optionally the same
+ * story coming from several lists is kept only once, the newest copy wins.
+ * 
+ * @version	1.0
+ */
+public final class NewsMerger {
+	/** Newest first, news without a date at the end. The sort is stable, so they keep the feed order. */
+	public static final Comparator<News> NEWEST_FIRST = new Comparator<News>() {
+		public int compare(News first, News second) {
+			// NO_DATE is the smallest possible value, so undated news go last
+			return Long.compare(second.getPublishedTime(), first.getPublishedTime());
+		}
+	};
+
+	private NewsMerger() {
+	}
+
+	/**
+	 * Position in one of the merged lists.
+	 */
+	private static class Cursor {
+		private final List<News> list;
+		private final int order;
+		private int position = 0;
+
+		Cursor(List<News> list, int order) {
+			this.list = list;
+			this.order = order;
+		}
+
+		News current() {
+			return list.get(position);
+		}
+	}
+
+	/**
+	 * Sorts the news of a single feed, newest first.
+	 * 
+	 * @param news News to sort in place.
+	 */
+	public static void sort(List<News> news) {
+		Collections.sort(news, NEWEST_FIRST);
+	}
+
+	/**
+	 * Merges sorted lists of news.
+	 * 
+	 * @param sortedLists Lists sorted with {@link #NEWEST_FIRST}.
+	 * @param limit Maximum number of news to return, 0 for no limit.
+	 * @return New list containing news from all the lists, newest first.
+	 */
+	public static List<News> merge(List<List<News>> sortedLists, int limit) {
+		return merge(sortedLists, limit, false);
+	}
+
+	/**
+	 * Merges sorted lists of news, skipping duplicates if requested.
+	 * 
+	 * @param sortedLists Lists sorted with {@link #NEWEST_FIRST}.
+	 * @param limit Maximum number of news to return, 0 for no limit.
+	 * @param deduplicate True if the same story published in several lists should be returned only once.
+	 * @return New list containing news from all the lists, newest first.
+	 * @see DuplicateFilter
+	 */
+	public static List<News> merge(List<List<News>> sortedLists, int limit, boolean deduplicate) {
+		int total = 0;
+		PriorityQueue<Cursor> heap = new PriorityQueue<Cursor>(Math.max(1, sortedLists.size()), new Comparator<Cursor>() {
+			public int compare(Cursor first, Cursor second) {
+				int byDate = NEWEST_FIRST.compare(first.current(), second.current());
+				// equal dates - keep the order of the lists, so the result is predictable
+				return byDate != 0 ? byDate : Integer.compare(first.order, second.order);
+			}
+		});
+
+		for (List<News> list : sortedLists) {
+			if (!list.isEmpty()) {
+				heap.add(new Cursor(list, heap.size()));
+				total += list.size();
+			}
+		}
+
+		if (limit > 0 && limit < total) {
+			total = limit;
+		}
+		List<News> merged = new ArrayList<News>(total);
+		DuplicateFilter duplicates = deduplicate ? new DuplicateFilter(total) : null;
+
+		while (merged.size() < total && !heap.isEmpty()) {
+			Cursor cursor = heap.poll();
+			if (duplicates == null || !duplicates.isDuplicate(cursor.current(), cursor.order)) {
+				merged.add(cursor.current());
+			}
+			cursor.position++;
+			if (cursor.position < cursor.list.size()) {
+				heap.add(cursor);
+			}
+		}
+
+		return merged;
+	}
+}
@@ -0,0 +1,269 @@
+package feeder.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.tree.DefaultMutableTreeNode;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * <b>OpmlFile</b> reads and writes lists of subscriptions in OPML, the format
+ * every feed reader can import and export. Categories are outlines containing
+ * the outlines of feeds (the ones with the xmlUrl attribute). Feeds nested deeper
+ * belong to the closest enclosing outline, feeds outside of any go to {@link #DEFAULT_CATEGORY}.
+ *
+ * @version	1.0
+ */
+public final class OpmlFile {
+	/** Category of feeds which aren't in any outline. */
+	public static final String DEFAULT_CATEGORY = "Importowane";
+	private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+	private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+	static {
+		// lists are downloaded from anywhere as well, they must not make us read local files
+		INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	/**
+	 * One feed of the list, or an empty Category if it has no URL.
+	 */
+	public static final class Subscription {
+		private final String category;
+		private final String name;
+		private final String url;
+
+		/**
+		 * @param category Name of the Category.
+		 * @param name Name of the Channel.
+		 * @param url URL of the feed.
+		 */
+		public Subscription(final String category, final String name, final String url) {
+			this.category = category;
+			this.name = name;
+			this.url = url;
+		}
+
+		/**
+		 * @return Name of the Category.
+		 */
+		public String getCategory() {
+			return category;
+		}
+
+		/**
+		 * @return Name of the Channel.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return URL of the feed.
+		 */
+		public String getUrl() {
+			return url;
+		}
+	}
+
+	private OpmlFile() {
+	}
+
+	/**
+	 * Reads the subscriptions in the order of the file.
+	 *
+	 * @param file OPML file.
+	 * @return Subscriptions from the file.
+	 * @throws IOException Thrown when the file can't be read or isn't an OPML document.
+	 */
+	public static List<Subscription> read(final File file) throws IOException {
+		InputStream input = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return read(input);
+		}
+		finally {
+			input.close();
+		}
+	}
+
+	/**
+	 * Reads the subscriptions in the order of the document.
+	 *
+	 * @param input OPML document, not closed.
+	 * @return Subscriptions from the document.
+	 * @throws IOException Thrown when the document can't be read or isn't an OPML document.
+	 */
+	public static List<Subscription> read(final InputStream input) throws IOException {
+		List<Subscription> subscriptions = new ArrayList<Subscription>();
+		try {
+			XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(input);
+			try {
+				if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || !"opml".equals(reader.getLocalName())) {
+					throw new IOException("To nie jest plik OPML.");
+				}
+				// names of the outlines we're in, null for the ones which are feeds
+				List<String> outlines = new ArrayList<String>();
+				while (reader.hasNext()) {
+					int event = reader.next();
+					if (event == XMLStreamConstants.START_ELEMENT && "outline".equals(reader.getLocalName())) {
+						String url = attribute(reader, "xmlUrl");
+						String name = attribute(reader, "title");
+						if (name == null) {
+							name = attribute(reader, "text");
+						}
+						if (url != null) {
+							subscriptions.add(new Subscription(category(outlines), name != null ? name : url, url));
+						}
+						outlines.add(url == null ? name : null);
+					}
+					else if (event == XMLStreamConstants.END_ELEMENT && "outline".equals(reader.getLocalName())) {
+						outlines.remove(outlines.size() - 1);
+					}
+				}
+			}
+			finally {
+				reader.close();
+			}
+		}
+		catch (XMLStreamException e) {
+			throw new IOException("Niepoprawny plik OPML: " + e.getMessage(), e);
+		}
+		return subscriptions;
+	}
+
+	private static String category(final List<String> outlines) {
+		for (int i = outlines.size() - 1; i >= 0; i--) {
+			if (outlines.get(i) != null) return outlines.get(i);
+		}
+		return DEFAULT_CATEGORY;
+	}
+
+	private static String attribute(final XMLStreamReader reader, final String name) {
+		String value = reader.getAttributeValue(null, name);
+		if (value == null) return null;
+		value = value.trim();
+		return value.isEmpty() ? null : value;
+	}
+
+	/**
+	 * Takes the subscriptions of the Model in the order of the tree.
+	 *
+	 * @param model Model to copy.
+	 * @return All the Channels of the Model.
+	 */
+	public static List<Subscription> capture(final Model model) {
+		List<Subscription> subscriptions = new ArrayList<Subscription>();
+		synchronized (model) {
+			DefaultMutableTreeNode root = model.getRoot();
+			for (int i = 0; i < root.getChildCount(); i++) {
+				DefaultMutableTreeNode categoryNode = (DefaultMutableTreeNode) root.getChildAt(i);
+				Category category = model.getCategoriesMap().get(categoryNode.toString());
+				if (categoryNode.getChildCount() == 0) {
+					// empty categories are kept too
+					subscriptions.add(new Subscription(category.getName(), null, null));
+				}
+				for (int j = 0; j < categoryNode.getChildCount(); j++) {
+					Channel channel = category.getChannel(categoryNode.getChildAt(j).toString());
+					subscriptions.add(new Subscription(category.getName(), channel.getName(), channel.getUrl()));
+				}
+			}
+		}
+		return subscriptions;
+	}
+
+	/**
+	 * Writes all the subscriptions of the Model.
+	 *
+	 * @param model Model to export.
+	 * @param file OPML file to write.
+	 * @throws IOException Thrown when the file can't be written.
+	 */
+	public static void write(final Model model, final File file) throws IOException {
+		List<Subscription> subscriptions = capture(model);
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(file));
+		try {
+			write(subscriptions, output);
+		}
+		finally {
+			output.close();
+		}
+	}
+
+	/**
+	 * Writes the subscriptions grouped by their Categories. A Subscription without
+	 * a URL stands for an empty Category.
+	 *
+	 * @param subscriptions Subscriptions to write, the ones of the same Category next to each other.
+	 * @param output Stream to write to, not closed.
+	 * @throws IOException Thrown when the document can't be written.
+	 */
+	public static void write(final List<Subscription> subscriptions, final OutputStream output) throws IOException {
+		try {
+			XMLStreamWriter writer = OUTPUT_FACTORY.createXMLStreamWriter(output, "UTF-8");
+			writer.writeStartDocument("UTF-8", "1.0");
+			writer.writeCharacters("\n");
+			writer.writeStartElement("opml");
+			writer.writeAttribute("version", "2.0");
+			writer.writeCharacters("\n\t");
+			writer.writeStartElement("head");
+			writer.writeStartElement("title");
+			writer.writeCharacters("Feeder");
+			writer.writeEndElement();
+			writer.writeEndElement();
+			writer.writeCharacters("\n\t");
+			writer.writeStartElement("body");
+
+			String category = null;
+			for (Subscription subscription : subscriptions) {
+				if (!subscription.getCategory().equals(category)) {
+					if (category != null) {
+						writer.writeCharacters("\n\t\t");
+						writer.writeEndElement();
+					}
+					category = subscription.getCategory();
+					writer.writeCharacters("\n\t\t");
+					writer.writeStartElement("outline");
+					writer.writeAttribute("text", category);
+					writer.writeAttribute("title", category);
+				}
+				if (subscription.getUrl() != null) {
+					writer.writeCharacters("\n\t\t\t");
+					writer.writeEmptyElement("outline");
+					writer.writeAttribute("type", "rss");
+					writer.writeAttribute("text", subscription.getName());
+					writer.writeAttribute("title", subscription.getName());
+					writer.writeAttribute("xmlUrl", subscription.getUrl());
+				}
+			}
+			if (category != null) {
+				writer.writeCharacters("\n\t\t");
+				writer.writeEndElement();
+			}
+
+			writer.writeCharacters("\n\t");
+			writer.writeEndElement();
+			writer.writeCharacters("\n");
+			writer.writeEndElement();
+			writer.writeCharacters("\n");
+			writer.writeEndDocument();
+			writer.close();
+		}
+		catch (XMLStreamException e) {
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+}
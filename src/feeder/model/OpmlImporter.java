@@ -0,0 +1,213 @@
+package feeder.model;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import feeder.model.OpmlFile.Subscription;
+
+/**
+ * <b>OpmlImporter</b> validates a list of subscriptions before it's added to the Model:
+ * every feed is fetched for the first time, many of them at once, but never more than
+ * {@link FeedFetcher#getHostLimit()} from the same server. Feeds which can't be fetched or parsed are
+ * reported and left out, subscriptions which already exist are skipped.
+ * The Model itself isn't touched - the valid Channels are added in a single batch
+ * with {@link Model#addChannels(Map)}.
+ *
+ * @version	1.0
+ */
+public class OpmlImporter {
+	private static final int THREADS = 32;
+
+	private final Model model;
+
+	/**
+	 * Listener notified about each validated feed, on one of the fetching threads.
+	 */
+	public interface ProgressListener {
+		/**
+		 * @param subscription Validated feed.
+		 * @param isValid True if the feed was fetched and parsed.
+		 * @param done Number of feeds validated so far.
+		 * @param total Number of feeds to validate.
+		 */
+		void feedValidated(Subscription subscription, boolean isValid, int done, int total);
+	}
+
+	/**
+	 * Outcome of the validation.
+	 */
+	public static final class Result {
+		private final Map<String, List<Channel>> channels = new LinkedHashMap<String, List<Channel>>();
+		private final List<Subscription> failed = new ArrayList<Subscription>();
+		private int skipped = 0;
+
+		/**
+		 * @return Fetched Channels by the names of their Categories, in the order of the list.
+		 */
+		public Map<String, List<Channel>> getChannels() {
+			return channels;
+		}
+
+		/**
+		 * @return Feeds which couldn't be fetched or parsed.
+		 */
+		public List<Subscription> getFailed() {
+			return failed;
+		}
+
+		/**
+		 * @return Number of feeds left out because they were already subscribed in their Category.
+		 */
+		public int getSkipped() {
+			return skipped;
+		}
+	}
+
+	/**
+	 * @param model Model the subscriptions will be added to, used to find the ones which already exist.
+	 */
+	public OpmlImporter(final Model model) {
+		this.model = model;
+	}
+
+	/**
+	 * Fetches all the feeds and waits until each of them is either valid or failed.
+	 * Each fetch is limited by the timeout of Channels. Interrupting the calling thread
+	 * cancels the validation.
+	 *
+	 * @param subscriptions Feeds to validate.
+	 * @param listener Listener to notify about the progress, may be null.
+	 * @return Valid Channels, failed and skipped feeds.
+	 * @throws InterruptedException Thrown when the validation was cancelled.
+	 * @see Channel#getTimeout()
+	 */
+	public Result validate(final List<Subscription> subscriptions, final ProgressListener listener) throws InterruptedException {
+		final Result result = new Result();
+		List<Subscription> feeds = filterExisting(subscriptions, result);
+		if (feeds.isEmpty()) return result;
+
+		final List<Subscription> pending = feeds;
+		final Channel[] channels = new Channel[feeds.size()];
+		final CountDownLatch finished = new CountDownLatch(feeds.size());
+		final AtomicInteger done = new AtomicInteger();
+		// feeds of one server wait in its queue, so they don't block the threads meant for the others
+		HostScheduler scheduler = new HostScheduler();
+		for (int i = 0; i < feeds.size(); i++) {
+			final int index = i;
+			scheduler.add(feeds.get(i).getUrl(), new Runnable() {
+				public void run() {
+					Subscription subscription = pending.get(index);
+					channels[index] = fetch(subscription);
+					finished.countDown();
+					if (listener != null) {
+						listener.feedValidated(subscription, channels[index] != null, done.incrementAndGet(), pending.size());
+					}
+				}
+			});
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(THREADS, feeds.size()), new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "feeder-import");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		try {
+			scheduler.start(executor);
+			finished.await();
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		for (int i = 0; i < channels.length; i++) {
+			if (channels[i] == null) {
+				result.failed.add(feeds.get(i));
+				continue;
+			}
+			List<Channel> category = result.channels.get(feeds.get(i).getCategory());
+			if (category == null) {
+				category = new ArrayList<Channel>();
+				result.channels.put(feeds.get(i).getCategory(), category);
+			}
+			category.add(channels[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * @return Channel with its first content, null if the feed is broken.
+	 */
+	private static Channel fetch(final Subscription subscription) {
+		try {
+			Channel channel = new Channel(subscription.getName(), new URL(subscription.getUrl()));
+			channel.refresh();
+			return channel;
+		}
+		catch (Exception e) {
+			// any reason is the same for the user - the feed doesn't work
+			return null;
+		}
+	}
+
+	/**
+	 * Leaves out feeds which are already subscribed in their Category or repeated in it in the list.
+	 * The same feed may be subscribed in several Categories, so each of them keeps its copy.
+	 * Names taken in their Category get a number, so no feed is lost because of its name.
+	 */
+	private List<Subscription> filterExisting(final List<Subscription> subscriptions, final Result result) {
+		Map<String, Set<String>> urls = new HashMap<String, Set<String>>();
+		Map<String, Set<String>> names = new HashMap<String, Set<String>>();
+		synchronized (model) {
+			for (Category category : model.getCategoriesMap().values()) {
+				names.put(category.getName(), new HashSet<String>(category.getChannelsMap().keySet()));
+				Set<String> subscribed = new HashSet<String>();
+				for (Channel channel : category.getChannelsMap().values()) {
+					subscribed.add(DuplicateFilter.normalizeLink(channel.getUrl()));
+				}
+				urls.put(category.getName(), subscribed);
+			}
+		}
+
+		List<Subscription> feeds = new ArrayList<Subscription>(subscriptions.size());
+		for (Subscription subscription : subscriptions) {
+			if (subscription.getUrl() == null) continue;
+			Set<String> subscribed = urls.get(subscription.getCategory());
+			if (subscribed == null) {
+				subscribed = new HashSet<String>();
+				urls.put(subscription.getCategory(), subscribed);
+			}
+			if (!subscribed.add(DuplicateFilter.normalizeLink(subscription.getUrl()))) {
+				result.skipped++;
+				continue;
+			}
+
+			Set<String> taken = names.get(subscription.getCategory());
+			if (taken == null) {
+				taken = new HashSet<String>();
+				names.put(subscription.getCategory(), taken);
+			}
+			String name = subscription.getName();
+			for (int number = 2; !taken.add(name); number++) {
+				name = subscription.getName() + " (" + number + ")";
+			}
+			feeds.add(name.equals(subscription.getName()) ? subscription
+					: new Subscription(subscription.getCategory(), name, subscription.getUrl()));
+		}
+		return Collections.unmodifiableList(feeds);
+	}
+}
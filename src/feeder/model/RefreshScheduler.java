@@ -0,0 +1,217 @@
+package feeder.model;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <b>RefreshScheduler</b> refreshes Channels in the background, each one on its own interval,
+ * so viewing a Channel can use content which is already fresh. The interval adapts to the feed:
+ * it follows how often new entries actually appear, never goes below the ttl declared by the feed,
+ * skips the hours and days listed in skipHours/skipDays and always stays between
+ * the minimum and maximum interval.
+ *
+ * @version	1.0
+ */
+public class RefreshScheduler {
+	/** Default minimum interval between two refreshes of one Channel (5 minutes). */
+	public static final long DEFAULT_MIN_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+	/** Default maximum interval between two refreshes of one Channel (6 hours). */
+	public static final long DEFAULT_MAX_INTERVAL = TimeUnit.HOURS.toMillis(6);
+	private static final int THREADS = 4;
+	// spreads the first refreshes, so the start of the application doesn't fetch everything at once
+	private static final long INITIAL_SPREAD = TimeUnit.SECONDS.toMillis(30);
+	// weight of the newest observation in the average time between changes
+	private static final double CHANGE_WEIGHT = 0.3;
+	private static final String[] DAYS = { "Sunday", "Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday" };
+
+	private final ScheduledExecutorService executor;
+	private final Map<Channel, State> states = new ConcurrentHashMap<Channel, State>();
+	private final Random random = new Random();
+	private final long minInterval;
+	private final long maxInterval;
+
+	/**
+	 * Refresh history of a single Channel.
+	 */
+	private static class State {
+		private volatile ScheduledFuture<?> future;
+		private long interval;
+		private long lastChangeTime = 0;
+		private long averageChangeInterval = 0;
+	}
+
+	/**
+	 * Creates a scheduler with default interval bounds.
+	 */
+	public RefreshScheduler() {
+		this(DEFAULT_MIN_INTERVAL, DEFAULT_MAX_INTERVAL);
+	}
+
+	/**
+	 * @param minInterval Minimum interval between two refreshes of one Channel in milliseconds.
+	 * @param maxInterval Maximum interval between two refreshes of one Channel in milliseconds.
+	 */
+	public RefreshScheduler(final long minInterval, final long maxInterval) {
+		if (minInterval <= 0 || maxInterval < minInterval) {
+			throw new IllegalArgumentException("Niepoprawne granice częstotliwości odświeżania.");
+		}
+		this.minInterval = minInterval;
+		this.maxInterval = maxInterval;
+
+		ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(THREADS, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "feeder-refresh");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+		pool.setRemoveOnCancelPolicy(true);
+		executor = pool;
+	}
+
+	/**
+	 * Starts refreshing the Channel in the background. Does nothing if it's already scheduled.
+	 *
+	 * @param channel Channel to refresh.
+	 */
+	public void schedule(final Channel channel) {
+		State state = new State();
+		state.interval = minInterval;
+		if (states.putIfAbsent(channel, state) != null) return;
+
+		channel.setMaxAge(minInterval);
+		long delay = channel.isFresh() ? minInterval : (long) (random.nextDouble() * INITIAL_SPREAD);
+		submit(channel, state, delay);
+	}
+
+	/**
+	 * Stops refreshing the Channel, e.g. when it's removed.
+	 *
+	 * @param channel Channel to forget.
+	 */
+	public void unschedule(final Channel channel) {
+		State state = states.remove(channel);
+		if (state != null && state.future != null) {
+			state.future.cancel(false);
+		}
+		channel.setMaxAge(0);
+	}
+
+	/**
+	 * Stops all the background refreshes.
+	 */
+	public void shutdown() {
+		executor.shutdownNow();
+		states.clear();
+	}
+
+	private void submit(final Channel channel, final State state, final long delay) {
+		if (executor.isShutdown()) return;
+
+		state.future = executor.schedule(new Runnable() {
+			public void run() {
+				refresh(channel, state);
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	private void refresh(final Channel channel, final State state) {
+		// removed in the meantime
+		if (states.get(channel) != state) return;
+
+		long interval;
+		long retryTime = 0;
+		try {
+			int newEntries = channel.refresh();
+			interval = nextInterval(channel, state, newEntries, System.currentTimeMillis());
+		}
+		catch (FeedFetcher.RetryLaterException e) {
+			// the server asked for a break or the Channel is broken, the feed itself changes as often as before
+			interval = state.interval;
+			retryTime = e.getRetryTime();
+		}
+		catch (Exception e) {
+			// broken or unreachable - try again later, but not too often
+			interval = clamp(state.interval * 2);
+		}
+
+		state.interval = interval;
+		channel.setMaxAge(interval);
+		long now = System.currentTimeMillis();
+		submit(channel, state, skipForbiddenTime(channel, Math.max(now + interval, retryTime)) - now);
+	}
+
+	/**
+	 * Computes the interval from the observed frequency of changes: a feed is polled
+	 * about twice as often as new entries appear in it. The longer nothing new appears,
+	 * the less often it's polled.
+	 */
+	private long nextInterval(final Channel channel, final State state, final int newEntries, final long now) {
+		if (newEntries > 0) {
+			if (state.lastChangeTime > 0) {
+				long observed = now - state.lastChangeTime;
+				state.averageChangeInterval = state.averageChangeInterval == 0 ? observed
+						: (long) (CHANGE_WEIGHT * observed + (1 - CHANGE_WEIGHT) * state.averageChangeInterval);
+			}
+			state.lastChangeTime = now;
+		}
+
+		long interval;
+		if (state.averageChangeInterval > 0) {
+			interval = Math.max(state.averageChangeInterval, now - state.lastChangeTime) / 2;
+		}
+		else {
+			// no history yet - back off slowly while the feed doesn't change
+			interval = newEntries > 0 ? state.interval : state.interval * 3 / 2;
+		}
+
+		interval = Math.max(interval, TimeUnit.MINUTES.toMillis(channel.getTtl()));
+		return clamp(interval);
+	}
+
+	private long clamp(final long interval) {
+		return Math.min(maxInterval, Math.max(minInterval, interval));
+	}
+
+	/**
+	 * Moves the time forward, hour by hour, until it's outside of feed's skipHours and skipDays.
+	 * Both are defined in GMT.
+	 */
+	private static long skipForbiddenTime(final Channel channel, final long time) {
+		List<Integer> skipHours = channel.getSkipHours();
+		List<String> skipDays = channel.getSkipDays();
+		if (skipHours.isEmpty() && skipDays.isEmpty()) return time;
+
+		Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("GMT"), Locale.ENGLISH);
+		calendar.setTimeInMillis(time);
+		// a feed skipping every hour of the week would loop forever
+		for (int hours = 0; hours < 7 * 24; hours++) {
+			String day = DAYS[calendar.get(Calendar.DAY_OF_WEEK) - Calendar.SUNDAY];
+			if (!skipHours.contains(calendar.get(Calendar.HOUR_OF_DAY)) && !containsIgnoreCase(skipDays, day)) {
+				return calendar.getTimeInMillis();
+			}
+			calendar.add(Calendar.HOUR_OF_DAY, 1);
+			calendar.set(Calendar.MINUTE, 0);
+			calendar.set(Calendar.SECOND, 0);
+		}
+		return time;
+	}
+
+	private static boolean containsIgnoreCase(final List<String> list, final String value) {
+		for (String element : list) {
+			if (value.equalsIgnoreCase(element.trim())) return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,351 @@
+package feeder.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * <b>SearchIndex</b> is a full-text inverted index over titles and descriptions of News
+ * from all the Channels. It listens to the Model and re-indexes a Channel every time
+ * its entries change, so searching never touches the network. Every term keeps a compact
+ * posting list in primitive arrays - ids of the News containing it and the weight
+ * of the term in each of them (a word in the title counts more than one in the description).
+ *
+ * @version	1.0
+ */
+public class SearchIndex implements ModelListener {
+	private static final int MIN_TERM_LENGTH = 2;
+	private static final int TITLE_WEIGHT = 4;
+	private static final int DESCRIPTION_WEIGHT = 1;
+	// removed News are only marked, the index is rebuilt when they make up half of it
+	private static final int COMPACT_THRESHOLD = 1024;
+
+	private final Model model;
+	private final NavigableMap<String, Postings> terms = new TreeMap<String, Postings>();
+	private final Map<Channel, int[]> channelDocuments = new IdentityHashMap<Channel, int[]>();
+	private final List<News> documents = new ArrayList<News>();
+	private final BitSet deleted = new BitSet();
+	private int deletedCount = 0;
+
+	/**
+	 * Posting list of a single term. Documents are added with increasing ids,
+	 * so the list is always sorted.
+	 */
+	private static final class Postings {
+		private int[] documents = new int[2];
+		private int[] weights = new int[2];
+		private int size = 0;
+
+		private void add(final int document, final int weight) {
+			// the same term again in the same News
+			if (size > 0 && documents[size - 1] == document) {
+				weights[size - 1] += weight;
+				return;
+			}
+			if (size == documents.length) {
+				documents = Arrays.copyOf(documents, size * 2);
+				weights = Arrays.copyOf(weights, size * 2);
+			}
+			documents[size] = document;
+			weights[size] = weight;
+			size++;
+		}
+	}
+
+	/**
+	 * Creates the index of all the Channels of the Model and starts listening to its changes.
+	 *
+	 * @param model Model to index.
+	 */
+	public SearchIndex(final Model model) {
+		this.model = model;
+		model.addModelListener(this);
+		reindexAll();
+	}
+
+	/**
+	 * Indexes the current content of every Channel again, e.g. after
+	 * the cached entries were loaded from the disk.
+	 */
+	public void reindexAll() {
+		for (Channel channel : model.getAllChannels()) {
+			index(channel);
+		}
+	}
+
+	/**
+	 * Replaces the indexed News of the Channel with its current content.
+	 *
+	 * @param channel Channel to index.
+	 */
+	public void index(final Channel channel) {
+		// converted outside of the lock, searching doesn't wait for it
+		List<News> content = channel.getCurrentContent();
+		synchronized (this) {
+			removeDocuments(channel);
+			int[] ids = new int[content.size()];
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = addDocument(content.get(i));
+			}
+			channelDocuments.put(channel, ids);
+			compactIfNeeded();
+		}
+	}
+
+	/**
+	 * Removes News of the Channel from the index.
+	 *
+	 * @param channel Channel to forget.
+	 */
+	public synchronized void remove(final Channel channel) {
+		removeDocuments(channel);
+		compactIfNeeded();
+	}
+
+	/**
+	 * Finds News containing all the words of the query. The last word can be
+	 * incomplete - it matches every term beginning with it. Hits are ranked by the sum
+	 * of the weights of the query words, then by publication time. A word matching many
+	 * terms of one News (a prefix) counts with the weight of the best of them.
+	 *
+	 * @param query Words to look for.
+	 * @param limit Maximum number of hits.
+	 * @return Found News, best hits first.
+	 */
+	public synchronized List<News> search(final String query, final int limit) {
+		List<String> words = tokenize(query);
+		if (words.isEmpty() || limit <= 0) return Collections.emptyList();
+
+		int[] scores = new int[documents.size()];
+		int[] matchedWords = new int[documents.size()];
+		// weight of the current word in each News, the best of the terms it matched
+		int[] wordWeights = new int[documents.size()];
+		for (int i = 0; i < words.size(); i++) {
+			String word = words.get(i);
+			Map<String, Postings> matching = i == words.size() - 1
+					? terms.subMap(word, true, word + Character.MAX_VALUE, false)
+					: singleTerm(word);
+			for (Postings postings : matching.values()) {
+				for (int j = 0; j < postings.size; j++) {
+					int document = postings.documents[j];
+					int weight = postings.weights[j];
+					// a prefix can match many terms of one News, each word counts once
+					if (matchedWords[document] == i) {
+						matchedWords[document] = i + 1;
+						wordWeights[document] = weight;
+						scores[document] += weight;
+					}
+					else if (matchedWords[document] == i + 1 && weight > wordWeights[document]) {
+						scores[document] += weight - wordWeights[document];
+						wordWeights[document] = weight;
+					}
+				}
+			}
+		}
+
+		final int[] hits = new int[documents.size()];
+		int count = 0;
+		for (int document = 0; document < scores.length; document++) {
+			if (matchedWords[document] == words.size() && !deleted.get(document)) {
+				hits[count++] = document;
+			}
+		}
+		return rank(hits, count, scores, limit);
+	}
+
+	/**
+	 * @return Number of News in the index.
+	 */
+	public synchronized int size() {
+		return documents.size() - deletedCount;
+	}
+
+	private Map<String, Postings> singleTerm(final String word) {
+		Postings postings = terms.get(word);
+		if (postings == null) return Collections.emptyMap();
+		return Collections.singletonMap(word, postings);
+	}
+
+	private List<News> rank(final int[] hits, final int count, final int[] scores, final int limit) {
+		Integer[] order = new Integer[count];
+		for (int i = 0; i < count; i++) {
+			order[i] = hits[i];
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer first, Integer second) {
+				int result = Integer.compare(scores[second], scores[first]);
+				if (result != 0) return result;
+				return NewsMerger.NEWEST_FIRST.compare(documents.get(first), documents.get(second));
+			}
+		});
+
+		List<News> result = new ArrayList<News>(Math.min(count, limit));
+		for (int i = 0; i < count && i < limit; i++) {
+			result.add(documents.get(order[i]));
+		}
+		return result;
+	}
+
+	private int addDocument(final News news) {
+		int document = documents.size();
+		documents.add(news);
+		addTerms(document, news.getTitle(), TITLE_WEIGHT);
+		addTerms(document, news.getDescription(), DESCRIPTION_WEIGHT);
+		return document;
+	}
+
+	private void addTerms(final int document, final String text, final int weight) {
+		for (String term : tokenize(text)) {
+			Postings postings = terms.get(term);
+			if (postings == null) {
+				postings = new Postings();
+				terms.put(term, postings);
+			}
+			postings.add(document, weight);
+		}
+	}
+
+	private void removeDocuments(final Channel channel) {
+		int[] ids = channelDocuments.remove(channel);
+		if (ids == null) return;
+		for (int document : ids) {
+			deleted.set(document);
+			documents.set(document, null);
+		}
+		deletedCount += ids.length;
+	}
+
+	/**
+	 * Drops removed News from the posting lists and renumbers the rest.
+	 */
+	private void compactIfNeeded() {
+		if (deletedCount < COMPACT_THRESHOLD || deletedCount * 2 < documents.size()) return;
+
+		int[] newIds = new int[documents.size()];
+		List<News> kept = new ArrayList<News>(documents.size() - deletedCount);
+		for (int document = 0; document < documents.size(); document++) {
+			if (deleted.get(document)) {
+				newIds[document] = -1;
+			}
+			else {
+				newIds[document] = kept.size();
+				kept.add(documents.get(document));
+			}
+		}
+
+		for (Iterator<Postings> iterator = terms.values().iterator(); iterator.hasNext();) {
+			Postings postings = iterator.next();
+			int size = 0;
+			for (int i = 0; i < postings.size; i++) {
+				int document = newIds[postings.documents[i]];
+				if (document >= 0) {
+					postings.documents[size] = document;
+					postings.weights[size] = postings.weights[i];
+					size++;
+				}
+			}
+			postings.size = size;
+			if (size == 0) {
+				iterator.remove();
+			}
+		}
+
+		for (Map.Entry<Channel, int[]> entry : channelDocuments.entrySet()) {
+			int[] ids = entry.getValue();
+			for (int i = 0; i < ids.length; i++) {
+				ids[i] = newIds[ids[i]];
+			}
+		}
+
+		documents.clear();
+		documents.addAll(kept);
+		deleted.clear();
+		deletedCount = 0;
+	}
+
+	/**
+	 * Splits the text into lower case words made of letters and digits.
+	 */
+	static List<String> tokenize(final String text) {
+		if (text == null) return Collections.emptyList();
+
+		List<String> words = new ArrayList<String>();
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean isWordCharacter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (isWordCharacter && start < 0) {
+				start = i;
+			}
+			else if (!isWordCharacter && start >= 0) {
+				if (i - start >= MIN_TERM_LENGTH) {
+					words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+				}
+				start = -1;
+			}
+		}
+		return words;
+	}
+
+	////////////////////////////////////////////
+	////////////// MODEL LISTENER //////////////
+	////////////////////////////////////////////
+
+	@Override
+	public void categoryAdded(String name) {
+	}
+
+	@Override
+	public void categoryRenamed(String oldName, String newName) {
+	}
+
+	@Override
+	public void categoryRemoved(String name) {
+	}
+
+	@Override
+	public void channelAdded(String categoryName, Channel channel) {
+		index(channel);
+	}
+
+	@Override
+	public void channelRenamed(String categoryName, String oldName, String newName) {
+		// indexed News still show the old name of their Channel
+		Channel channel = model.getChannel(categoryName, newName);
+		if (channel != null) {
+			index(channel);
+		}
+	}
+
+	@Override
+	public void channelUrlChanged(String categoryName, String channelName, String newUrl) {
+		// the old entries stay searchable until the new feed is fetched
+	}
+
+	@Override
+	public void channelMoved(String channelName, String oldCategoryName, String newCategoryName) {
+	}
+
+	@Override
+	public void channelRemoved(String categoryName, Channel channel) {
+		remove(channel);
+	}
+
+	@Override
+	public void entriesUpdated(String categoryName, Channel channel) {
+		index(channel);
+	}
+
+	@Override
+	public void channelStatusChanged(String categoryName, Channel channel) {
+		// a broken Channel keeps its entries searchable
+	}
+}
@@ -0,0 +1,417 @@
+package feeder.model;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.rometools.rome.feed.WireFeed;
+import com.rometools.rome.feed.atom.Content;
+import com.rometools.rome.feed.atom.Entry;
+import com.rometools.rome.feed.atom.Feed;
+import com.rometools.rome.feed.atom.Link;
+import com.rometools.rome.feed.rss.Description;
+import com.rometools.rome.feed.rss.Guid;
+import com.rometools.rome.feed.rss.Item;
+import com.rometools.rome.io.FeedException;
+import com.rometools.rome.io.WireFeedInput;
+import com.rometools.rome.io.XmlReader;
+import com.rometools.rome.io.impl.DateParser;
+
+/**
+ * <b>StreamingFeedParser</b> reads RSS 2.0 and Atom 1.0 feeds with StAX, one element
+ * at a time, instead of building the whole JDOM document first like ROME does.
+ * Only the elements used by the application are read (titles, links, ids, descriptions,
+ * dates and the scheduling hints), everything else is skipped without being stored.
+ * The result is the same ROME WireFeed the rest of the application works with,
+ * so other formats (RSS 0.9x/1.0, Atom 0.3) are simply handed over to ROME.
+ *
+ * @version	1.0
+ */
+public final class StreamingFeedParser {
+	private static final String ATOM_NAMESPACE = "http://www.w3.org/2005/Atom";
+	private static final String DC_NAMESPACE = "http://purl.org/dc/elements/1.1/";
+	// the root element is always at the beginning, the rest is read only if ROME has to take over
+	private static final int SNIFF_LIMIT = 64 * 1024;
+	private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+	static {
+		// feeds come from anywhere, they must not make us read local files
+		FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+	}
+
+	private StreamingFeedParser() {
+	}
+
+	/**
+	 * Parses the feed, using ROME for formats which aren't streamed.
+	 *
+	 * @param body Response body, not closed by the parser.
+	 * @param contentType Content-Type header of the response, null if unknown.
+	 * @return Parsed feed.
+	 * @throws IllegalArgumentException Thrown when the format isn't supported by ROME either.
+	 * @throws FeedException Thrown when the document isn't a valid feed.
+	 * @throws IOException Thrown when the body can't be read.
+	 */
+	public static WireFeed parse(final InputStream body, final String contentType) throws IllegalArgumentException, FeedException, IOException {
+		BufferedInputStream input = new BufferedInputStream(body);
+		input.mark(SNIFF_LIMIT);
+
+		try {
+			XMLStreamReader reader = FACTORY.createXMLStreamReader(openReader(input, contentType));
+			try {
+				if (nextElement(reader) != XMLStreamConstants.START_ELEMENT) {
+					throw new FeedException("Dokument nie zawiera kanału.");
+				}
+				String root = reader.getLocalName();
+				if ("rss".equals(root) && isEmpty(reader.getNamespaceURI())
+						&& String.valueOf(reader.getAttributeValue(null, "version")).startsWith("2.")) {
+					return readRss(reader);
+				}
+				if ("feed".equals(root) && ATOM_NAMESPACE.equals(reader.getNamespaceURI())) {
+					return readAtom(reader);
+				}
+			}
+			finally {
+				reader.close();
+			}
+		}
+		catch (XMLStreamException e) {
+			throw new FeedException("Niepoprawny dokument XML: " + e.getMessage(), e);
+		}
+
+		input.reset();
+		return new WireFeedInput().build(openReader(input, contentType));
+	}
+
+	private static Reader openReader(final InputStream input, final String contentType) throws IOException {
+		XmlReader reader = contentType != null ? new XmlReader(input, contentType, true) : new XmlReader(input, true);
+		// HTML entities like &nbsp; are common in feeds, ROME fixes them too
+		return new EntityFixingReader(reader);
+	}
+
+	///////////////////////////////////////////
+	///////////////// RSS 2.0 /////////////////
+	///////////////////////////////////////////
+
+	private static WireFeed readRss(final XMLStreamReader reader) throws XMLStreamException {
+		com.rometools.rome.feed.rss.Channel channel = new com.rometools.rome.feed.rss.Channel("rss_2.0");
+		List<Item> items = new ArrayList<Item>();
+
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			if (!"channel".equals(reader.getLocalName())) {
+				skip(reader);
+				continue;
+			}
+			while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+				String element = reader.getLocalName();
+				if (!isEmpty(reader.getNamespaceURI())) {
+					skip(reader);
+				}
+				else if ("item".equals(element)) {
+					items.add(readItem(reader));
+				}
+				else if ("title".equals(element)) {
+					channel.setTitle(readText(reader));
+				}
+				else if ("link".equals(element)) {
+					channel.setLink(readText(reader));
+				}
+				else if ("description".equals(element)) {
+					channel.setDescription(readText(reader));
+				}
+				else if ("ttl".equals(element)) {
+					channel.setTtl(parseInt(readText(reader)));
+				}
+				else if ("skipHours".equals(element)) {
+					channel.setSkipHours(readSkipHours(reader));
+				}
+				else if ("skipDays".equals(element)) {
+					channel.setSkipDays(readChildren(reader, "day"));
+				}
+				else {
+					skip(reader);
+				}
+			}
+		}
+
+		channel.setItems(items);
+		return channel;
+	}
+
+	private static Item readItem(final XMLStreamReader reader) throws XMLStreamException {
+		Item item = new Item();
+		Date dcDate = null;
+
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			String element = reader.getLocalName();
+			String namespace = reader.getNamespaceURI();
+			if (DC_NAMESPACE.equals(namespace) && "date".equals(element)) {
+				dcDate = parseDate(readText(reader));
+			}
+			else if (!isEmpty(namespace)) {
+				skip(reader);
+			}
+			else if ("title".equals(element)) {
+				item.setTitle(readText(reader));
+			}
+			else if ("link".equals(element)) {
+				item.setLink(readText(reader));
+			}
+			else if ("guid".equals(element)) {
+				Guid guid = new Guid();
+				guid.setPermaLink(!"false".equalsIgnoreCase(reader.getAttributeValue(null, "isPermaLink")));
+				guid.setValue(readText(reader));
+				item.setGuid(guid);
+			}
+			else if ("description".equals(element)) {
+				Description description = new Description();
+				description.setType("text/html");
+				description.setValue(readText(reader));
+				item.setDescription(description);
+			}
+			else if ("pubDate".equals(element)) {
+				item.setPubDate(parseDate(readText(reader)));
+			}
+			else {
+				skip(reader);
+			}
+		}
+
+		if (item.getPubDate() == null) {
+			item.setPubDate(dcDate);
+		}
+		return item;
+	}
+
+	private static List<Integer> readSkipHours(final XMLStreamReader reader) throws XMLStreamException {
+		List<Integer> hours = new ArrayList<Integer>();
+		for (String hour : readChildren(reader, "hour")) {
+			int value = parseInt(hour);
+			if (value >= 0 && value < 24) {
+				hours.add(value);
+			}
+		}
+		return hours;
+	}
+
+	private static List<String> readChildren(final XMLStreamReader reader, final String name) throws XMLStreamException {
+		List<String> values = new ArrayList<String>();
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			if (name.equals(reader.getLocalName())) {
+				values.add(readText(reader).trim());
+			}
+			else {
+				skip(reader);
+			}
+		}
+		return values;
+	}
+
+	///////////////////////////////////////////
+	///////////////// ATOM 1.0 ////////////////
+	///////////////////////////////////////////
+
+	private static WireFeed readAtom(final XMLStreamReader reader) throws XMLStreamException {
+		Feed feed = new Feed("atom_1.0");
+		List<Entry> entries = new ArrayList<Entry>();
+		List<Link> links = new ArrayList<Link>();
+
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			String element = reader.getLocalName();
+			if (!ATOM_NAMESPACE.equals(reader.getNamespaceURI())) {
+				skip(reader);
+			}
+			else if ("entry".equals(element)) {
+				entries.add(readEntry(reader));
+			}
+			else if ("title".equals(element)) {
+				feed.setTitleEx(readContent(reader));
+			}
+			else if ("subtitle".equals(element)) {
+				feed.setSubtitle(readContent(reader));
+			}
+			else if ("id".equals(element)) {
+				feed.setId(readText(reader).trim());
+			}
+			else if ("link".equals(element)) {
+				addAlternateLink(reader, links);
+			}
+			else {
+				skip(reader);
+			}
+		}
+
+		feed.setAlternateLinks(links);
+		feed.setEntries(entries);
+		return feed;
+	}
+
+	private static Entry readEntry(final XMLStreamReader reader) throws XMLStreamException {
+		Entry entry = new Entry();
+		List<Link> links = new ArrayList<Link>();
+
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			String element = reader.getLocalName();
+			if (!ATOM_NAMESPACE.equals(reader.getNamespaceURI())) {
+				skip(reader);
+			}
+			else if ("title".equals(element)) {
+				entry.setTitleEx(readContent(reader));
+			}
+			else if ("link".equals(element)) {
+				addAlternateLink(reader, links);
+			}
+			else if ("id".equals(element)) {
+				entry.setId(readText(reader).trim());
+			}
+			else if ("summary".equals(element)) {
+				entry.setSummary(readContent(reader));
+			}
+			else if ("published".equals(element)) {
+				entry.setPublished(parseDate(readText(reader)));
+			}
+			else if ("updated".equals(element)) {
+				entry.setUpdated(parseDate(readText(reader)));
+			}
+			else {
+				skip(reader);
+			}
+		}
+
+		entry.setAlternateLinks(links);
+		return entry;
+	}
+
+	private static void addAlternateLink(final XMLStreamReader reader, final List<Link> links) throws XMLStreamException {
+		String rel = reader.getAttributeValue(null, "rel");
+		String href = reader.getAttributeValue(null, "href");
+		skip(reader);
+		if (href != null && (rel == null || "alternate".equals(rel))) {
+			Link link = new Link();
+			link.setRel("alternate");
+			link.setHref(href.trim());
+			links.add(link);
+		}
+	}
+
+	private static Content readContent(final XMLStreamReader reader) throws XMLStreamException {
+		Content content = new Content();
+		String type = reader.getAttributeValue(null, "type");
+		content.setType(type != null ? type : Content.TEXT);
+		// xhtml is only stripped to text later, its markup doesn't have to be kept
+		content.setValue(readText(reader));
+		return content;
+	}
+
+	///////////////////////////////////////////
+	///////////////// HELPERS /////////////////
+	///////////////////////////////////////////
+
+	/**
+	 * Reads the text of the current element, including the text of nested elements,
+	 * and moves to its end tag.
+	 */
+	private static String readText(final XMLStreamReader reader) throws XMLStreamException {
+		StringBuilder text = null;
+		String single = "";
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+					|| event == XMLStreamConstants.SPACE || event == XMLStreamConstants.ENTITY_REFERENCE) {
+				// nearly always the text comes in one piece, no need for a builder then
+				if (text == null && single.isEmpty()) {
+					single = reader.getText();
+				}
+				else {
+					if (text == null) {
+						text = new StringBuilder(single);
+					}
+					text.append(reader.getText());
+				}
+			}
+			else if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+		return text != null ? text.toString() : single;
+	}
+
+	/**
+	 * Moves to the next start or end tag. Unlike {@link XMLStreamReader#nextTag()}
+	 * it tolerates stray text between the elements, which broken feeds sometimes have.
+	 */
+	private static int nextElement(final XMLStreamReader reader) throws XMLStreamException {
+		int event = reader.next();
+		while (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT
+				&& event != XMLStreamConstants.END_DOCUMENT) {
+			event = reader.next();
+		}
+		return event;
+	}
+
+	/**
+	 * Skips the current element with all its content.
+	 */
+	private static void skip(final XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	/**
+	 * Dates in the standard formats are parsed with java.time, ROME tries dozens
+	 * of SimpleDateFormat masks and is used only for the unusual ones.
+	 */
+	private static Date parseDate(final String text) {
+		String date = text.trim();
+		try {
+			if (!date.isEmpty() && Character.isDigit(date.charAt(0)) && date.indexOf('T') > 0) {
+				return Date.from(OffsetDateTime.parse(date, DateTimeFormatter.ISO_OFFSET_DATE_TIME).toInstant());
+			}
+			return Date.from(ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+		}
+		catch (DateTimeParseException e) {
+			return DateParser.parseDate(date, Locale.US);
+		}
+	}
+
+	private static int parseInt(final String text) {
+		try {
+			return Integer.parseInt(text.trim());
+		}
+		catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static boolean isEmpty(final String namespace) {
+		return namespace == null || namespace.isEmpty();
+	}
+}
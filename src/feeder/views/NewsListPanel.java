@@ -0,0 +1,218 @@
+package feeder.views;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Font;
+import java.awt.GridLayout;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.AbstractListModel;
+import javax.swing.BorderFactory;
+import javax.swing.JEditorPane;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.ListCellRenderer;
+import javax.swing.ListSelectionModel;
+import javax.swing.ScrollPaneConstants;
+import javax.swing.UIManager;
+
+import feeder.model.News;
+
+/**
+ * <b>NewsListPanel</b> displays the News of a Channel or a Category as a list with
+ * one row per news (title, date and source) and the details of the selected one below it.
+ * All rows have the same height and a single renderer is reused for all of them, so only
+ * the visible rows are laid out and painted - opening 10k news costs the same as opening 10.
+ * The list model only wraps the given List, nothing is copied.
+ *
+ * @version	1.0
+ */
+public class NewsListPanel extends JPanel {
+	private static final long serialVersionUID = 1L;
+	// the width follows the viewport, the list mustn't measure every row to find it
+	private static final int CELL_WIDTH = 100;
+	private static final int CELL_PADDING = 4;
+	private final JLabel lblTitle;
+	private final JList<News> newsList;
+	private final NewsListModel listModel;
+	private final JEditorPane detailPane;
+	private boolean isAggregated = false;
+
+	/**
+	 * Model which exposes a List of News to JList without copying it.
+	 */
+	private static class NewsListModel extends AbstractListModel<News> {
+		private static final long serialVersionUID = 1L;
+		private List<News> content = Collections.emptyList();
+
+		public void setContent(List<News> content) {
+			int oldSize = this.content.size();
+			this.content = content;
+			if (oldSize > 0) {
+				fireIntervalRemoved(this, 0, oldSize - 1);
+			}
+			if (!content.isEmpty()) {
+				fireIntervalAdded(this, 0, content.size() - 1);
+			}
+		}
+
+		@Override
+		public int getSize() {
+			return content.size();
+		}
+
+		@Override
+		public News getElementAt(int index) {
+			return content.get(index);
+		}
+	}
+
+	/**
+	 * One row of the list - bold title and a line with the date and the source.
+	 */
+	private class NewsCellRenderer extends JPanel implements ListCellRenderer<News> {
+		private static final long serialVersionUID = 1L;
+		private final JLabel lblNewsTitle = new JLabel();
+		private final JLabel lblDetails = new JLabel();
+
+		public NewsCellRenderer() {
+			super(new GridLayout(2, 1));
+			setBorder(BorderFactory.createEmptyBorder(CELL_PADDING / 2, CELL_PADDING, CELL_PADDING / 2, CELL_PADDING));
+			lblNewsTitle.setFont(lblNewsTitle.getFont().deriveFont(Font.BOLD));
+			lblDetails.setFont(lblDetails.getFont().deriveFont(lblDetails.getFont().getSize2D() - 1));
+			// so the preferred height is the height of a row with text
+			lblNewsTitle.setText(" ");
+			lblDetails.setText(" ");
+			add(lblNewsTitle);
+			add(lblDetails);
+		}
+
+		@Override
+		public Component getListCellRendererComponent(JList<? extends News> list, News news, int index,
+				boolean isSelected, boolean cellHasFocus) {
+			lblNewsTitle.setText(news.getTitle());
+			StringBuilder details = new StringBuilder();
+			if (news.hasDate()) {
+				details.append(news.getDate());
+			}
+			if (isAggregated) {
+				details.append(details.length() > 0 ? " — " : "").append(news.getChannel());
+			}
+			lblDetails.setText(details.toString());
+
+			Color background = isSelected ? list.getSelectionBackground() : list.getBackground();
+			Color foreground = isSelected ? list.getSelectionForeground() : list.getForeground();
+			setBackground(background);
+			lblNewsTitle.setForeground(foreground);
+			lblDetails.setForeground(isSelected ? foreground : UIManager.getColor("Label.disabledForeground"));
+			return this;
+		}
+	}
+
+	/**
+	 * Creates an empty list and the detail panel.
+	 */
+	public NewsListPanel() {
+		super(new BorderLayout(0, 5));
+
+		lblTitle = new JLabel(" ");
+		lblTitle.setFont(new Font("Tahoma", Font.BOLD, 18));
+		add(lblTitle, BorderLayout.NORTH);
+
+		listModel = new NewsListModel();
+		newsList = new JList<News>(listModel);
+		newsList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+		NewsCellRenderer renderer = new NewsCellRenderer();
+		newsList.setCellRenderer(renderer);
+		newsList.setFixedCellWidth(CELL_WIDTH);
+		newsList.setFixedCellHeight(renderer.getPreferredSize().height);
+		JScrollPane scrPaneList = new JScrollPane(newsList);
+		scrPaneList.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
+
+		detailPane = new JEditorPane();
+		detailPane.setEditable(false);
+		detailPane.setEditorKit(JEditorPane.createEditorKitForContentType("text/html"));
+		JScrollPane scrPaneDetail = new JScrollPane(detailPane);
+
+		JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT, scrPaneList, scrPaneDetail);
+		splitPane.setResizeWeight(0.7);
+		add(splitPane, BorderLayout.CENTER);
+	}
+
+	/**
+	 * Replaces the displayed News. Keeps the selection if the same News is still on the list,
+	 * so partial results arriving in the background don't disturb the reader.
+	 *
+	 * @param title Title of the Channel or Category.
+	 * @param content News to display, not copied - mustn't be modified afterwards.
+	 * @param isAggregated True if the news come from many channels and their source should be shown.
+	 */
+	public void showNews(String title, List<News> content, boolean isAggregated) {
+		News selected = newsList.getSelectedValue();
+		this.isAggregated = isAggregated;
+		lblTitle.setText(title);
+		listModel.setContent(content);
+
+		if (selected != null) {
+			int index = content.indexOf(selected);
+			if (index >= 0) {
+				newsList.setSelectedIndex(index);
+				return;
+			}
+		}
+		newsList.clearSelection();
+		detailPane.setText("");
+	}
+
+	/**
+	 * Empties the list and shows a message instead, e.g. while loading.
+	 *
+	 * @param title Title of the Channel or Category.
+	 * @param message Message to display.
+	 */
+	public void showMessage(String title, String message) {
+		showNews(title, Collections.<News>emptyList(), false);
+		lblTitle.setText(title + " — " + message);
+	}
+
+	/**
+	 * @param html HTML-formatted details of the selected News.
+	 */
+	public void showDetail(String html) {
+		detailPane.setText(html);
+		detailPane.setCaretPosition(0);
+	}
+
+	/**
+	 * @return Selected News, null if none is selected.
+	 */
+	public News getSelectedNews() {
+		return newsList.getSelectedValue();
+	}
+
+	/**
+	 * @return True if the displayed news come from many channels.
+	 */
+	public boolean isAggregated() {
+		return isAggregated;
+	}
+
+	/**
+	 * @return The list, so View can listen to its events.
+	 */
+	public JList<News> getNewsList() {
+		return newsList;
+	}
+
+	/**
+	 * @return Panel with details of the selected News, so View can listen to its events.
+	 */
+	public JEditorPane getDetailPane() {
+		return detailPane;
+	}
+}
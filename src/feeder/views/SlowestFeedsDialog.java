@@ -0,0 +1,126 @@
+package feeder.views;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.border.EmptyBorder;
+import javax.swing.table.DefaultTableModel;
+
+import feeder.controller.Controller;
+import feeder.model.ChannelMetrics;
+
+/**
+ * <b>SlowestFeedsDialog</b> is a View displayed when the user chooses "Slowest feeds" from the menu.
+ * It lists all Channels, the slowest ones first, with what their fetches cost - times are
+ * 95th percentiles of the last fetches - so the user can tell which feeds to drop.
+ * Columns can be sorted by clicking their headers.
+ *
+ * @version	1.0
+ */
+public class SlowestFeedsDialog extends JDialog {
+	private static final long serialVersionUID = 1L;
+	private static final String[] COLUMNS = { "Kategoria", "Kanał", "Pobieranie [ms]", "DNS [ms]", "Połączenie [ms]",
+			"Transfer [ms]", "Parsowanie [ms]", "Wyświetlanie [ms]", "Rozmiar [kB]", "Wpisy", "Status HTTP",
+			"Pobrania", "Błędy", "Ostatni błąd" };
+	private static final Class<?>[] COLUMN_CLASSES = { String.class, String.class, Double.class, Double.class, Double.class,
+			Double.class, Double.class, Double.class, Double.class, Integer.class, Integer.class, Long.class, Long.class, String.class };
+	private final DefaultTableModel tableModel;
+	private Controller delegate;
+
+	/**
+	 * Constructor puts all elements to a JDialog.
+	 *
+	 * @param delegate Reference to Controller.
+	 */
+	public SlowestFeedsDialog(Controller delegate) {
+		this.delegate = delegate;
+
+		setTitle("Najwolniejsze kanały");
+		setModal(true);
+		setBounds(100, 100, 1000, 420);
+		setLocationRelativeTo(null);
+		getContentPane().setLayout(new BorderLayout());
+
+		tableModel = new DefaultTableModel(COLUMNS, 0) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public Class<?> getColumnClass(int column) {
+				return COLUMN_CLASSES[column];
+			}
+
+			@Override
+			public boolean isCellEditable(int row, int column) {
+				return false;
+			}
+		};
+		JTable table = new JTable(tableModel);
+		table.setAutoCreateRowSorter(true);
+		table.setFillsViewportHeight(true);
+		JScrollPane scrollPane = new JScrollPane(table);
+		scrollPane.setBorder(new EmptyBorder(5, 5, 5, 5));
+		getContentPane().add(scrollPane, BorderLayout.CENTER);
+
+		JPanel buttonPane = new JPanel();
+		buttonPane.setLayout(new FlowLayout(FlowLayout.RIGHT));
+		getContentPane().add(buttonPane, BorderLayout.SOUTH);
+
+		JButton refreshButton = new JButton("Odśwież");
+		buttonPane.add(refreshButton);
+		JButton closeButton = new JButton("Zamknij");
+		buttonPane.add(closeButton);
+		getRootPane().setDefaultButton(closeButton);
+
+		refreshButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent argument) {
+				fill();
+			}
+		});
+		closeButton.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent argument) {
+				dispose();
+			}
+		});
+
+		fill();
+	}
+
+	/**
+	 * Fills the table with the current measurements.
+	 */
+	private void fill() {
+		tableModel.setRowCount(0);
+		List<ChannelMetrics> slowest = delegate.getSlowestFeeds();
+		for (ChannelMetrics metrics : slowest) {
+			tableModel.addRow(new Object[] {
+					metrics.getCategoryName(),
+					metrics.getChannelName(),
+					round(metrics.getFetchTime().getPercentile95()),
+					round(metrics.getDnsTime().getPercentile95()),
+					round(metrics.getConnectTime().getPercentile95()),
+					round(metrics.getDownloadTime().getPercentile95()),
+					round(metrics.getParseTime().getPercentile95()),
+					round(metrics.getRenderTime().getPercentile95()),
+					round(metrics.getBytes().getMedian() / 1024),
+					metrics.getEntryCount(),
+					metrics.getLastStatus(),
+					metrics.getFetchCount(),
+					metrics.getErrorCount(),
+					metrics.getLastError() });
+		}
+	}
+
+	private static Double round(double value) {
+		return Math.round(value * 10) / 10.0;
+	}
+}
@@ -1,5 +1,6 @@
 package feeder.views;
 
+import java.awt.Color;
 import java.awt.Component;
 import java.awt.Desktop;
 import java.awt.event.ActionEvent;
@@ -14,20 +15,25 @@ import javax.swing.GroupLayout.Alignment;
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
-import javax.swing.JEditorPane;
 import javax.swing.JFrame;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.JScrollPane;
+import javax.swing.JTextField;
 import javax.swing.JTree;
 import javax.swing.LayoutStyle.ComponentPlacement;
+import javax.swing.ToolTipManager;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.border.EmptyBorder;
 import javax.swing.event.HyperlinkEvent;
 import javax.swing.event.HyperlinkListener;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
 import javax.swing.tree.DefaultMutableTreeNode;
@@ -53,10 +59,14 @@ public class View {
 	private JButton btnAddCat;
 	private JPanel ctpMain;
 	private JTree tree;
+	private JTextField txtSearch;
 	private JPopupMenu menu;
 	private JMenuItem menuEdit;
 	private JMenuItem menuDelete;
-	private JEditorPane feedPresenter;
+	private JMenuItem menuImport;
+	private JMenuItem menuExport;
+	private JMenuItem menuSlowest;
+	private NewsListPanel newsPanel;
 	private Controller delegate;
 
 	/**
@@ -80,6 +90,10 @@ public class View {
 		eventListeners();
 	}
 
+	/**
+	 * Shows folders for Categories and feed icons for Channels, broken Channels
+	 * are grayed out with their last error in the tooltip.
+	 */
 	private class CustomTreeCellRenderer extends DefaultTreeCellRenderer implements TreeCellRenderer {
 		private static final long serialVersionUID = 1L;
 		private Icon folderIcon = new ImageIcon("img/folder.png");
@@ -94,6 +108,16 @@ public class View {
 				setIcon(folderIcon);
 			else
 				setIcon(rssIcon);
+
+			String error = delegate.getBrokenChannelError(node);
+			if (error != null) {
+				setText(node + " (niedostępny)");
+				if (!isSelected) setForeground(Color.GRAY);
+				setToolTipText("Kanał nie działa" + (error.isEmpty() ? "" : ": " + error));
+			}
+			else {
+				setToolTipText(null);
+			}
 			return component;
 		}
 	}
@@ -107,14 +131,32 @@ public class View {
 		mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		mainFrame.setBounds(100, 100, 1024, 600);
 
+		// Menu bar - moving subscriptions between readers
+		JMenuBar menuBar = new JMenuBar();
+		JMenu menuFile = new JMenu("Plik");
+		menuImport = new JMenuItem("Importuj kanały z OPML...");
+		menuExport = new JMenuItem("Eksportuj kanały do OPML...");
+		menuFile.add(menuImport);
+		menuFile.add(menuExport);
+		menuBar.add(menuFile);
+		JMenu menuTools = new JMenu("Narzędzia");
+		menuSlowest = new JMenuItem("Najwolniejsze kanały...");
+		menuTools.add(menuSlowest);
+		menuBar.add(menuTools);
+		mainFrame.setJMenuBar(menuBar);
+
 		// JPanel - background
 		ctpMain = new JPanel();
 		ctpMain.setBorder(new EmptyBorder(5, 5, 5, 5));
 		mainFrame.setContentPane(ctpMain);
 
-		// Scrollable panels for content and tree
+		// Scrollable panel for the tree, list of news with details for the content
 		JScrollPane scrPaneTree = new JScrollPane();
-		JScrollPane scrPaneContent = new JScrollPane();
+		newsPanel = new NewsListPanel();
+
+		// Search box above the tree
+		txtSearch = new JTextField();
+		txtSearch.setToolTipText("Szukaj w nag\u0142\u00f3wkach wszystkich kana\u0142\u00f3w (Enter)");
 
 		// Buttons
 		btnAddCat = new JButton("Dodaj kategori\u0119");
@@ -135,32 +177,29 @@ public class View {
 				glCtpMain.createParallelGroup(Alignment.LEADING)
 				.addGroup(glCtpMain.createSequentialGroup()
 						.addGroup(glCtpMain.createParallelGroup(Alignment.LEADING, false)
+								.addComponent(txtSearch, GroupLayout.DEFAULT_SIZE, GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
 								.addComponent(btnAddFeed, GroupLayout.DEFAULT_SIZE, GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
 								.addComponent(btnAddCat, GroupLayout.DEFAULT_SIZE, GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
 								.addComponent(scrPaneTree, GroupLayout.PREFERRED_SIZE, 161, GroupLayout.PREFERRED_SIZE))
 						.addPreferredGap(ComponentPlacement.RELATED)
-						.addComponent(scrPaneContent, GroupLayout.DEFAULT_SIZE, 831, Short.MAX_VALUE))
+						.addComponent(newsPanel, GroupLayout.DEFAULT_SIZE, 831, Short.MAX_VALUE))
 				);
 		glCtpMain.setVerticalGroup(
 				glCtpMain.createParallelGroup(Alignment.TRAILING)
 				.addGroup(glCtpMain.createSequentialGroup()
 						.addGroup(glCtpMain.createParallelGroup(Alignment.LEADING)
 								.addGroup(glCtpMain.createSequentialGroup()
+										.addComponent(txtSearch, GroupLayout.PREFERRED_SIZE, GroupLayout.DEFAULT_SIZE, GroupLayout.PREFERRED_SIZE)
+										.addPreferredGap(ComponentPlacement.RELATED)
 										.addComponent(scrPaneTree, GroupLayout.DEFAULT_SIZE, 483, Short.MAX_VALUE)
 										.addPreferredGap(ComponentPlacement.RELATED)
 										.addComponent(btnAddCat)
 										.addPreferredGap(ComponentPlacement.RELATED)
 										.addComponent(btnAddFeed))
-								.addComponent(scrPaneContent, GroupLayout.DEFAULT_SIZE, 541, Short.MAX_VALUE))
+								.addComponent(newsPanel, GroupLayout.DEFAULT_SIZE, 541, Short.MAX_VALUE))
 						.addContainerGap())
 				);
 
-		// JPane to display the channel content
-		feedPresenter = new JEditorPane();
-		feedPresenter.setEditable(false);
-		feedPresenter.setEditorKit(JEditorPane.createEditorKitForContentType("text/html"));
-		feedPresenter.setCaretPosition(0);
-
 		// JTree which displays main tree model of the app
 		tree = new JTree();
 		tree.setModel(delegate.getTreeModel());
@@ -172,9 +211,10 @@ public class View {
 		// setting up custom renderer so we have nice icons
 		DefaultTreeCellRenderer customRenderer = new CustomTreeCellRenderer();
 		tree.setCellRenderer(customRenderer);
+		// errors of broken Channels
+		ToolTipManager.sharedInstance().registerComponent(tree);
 
 		// initializing stuff
-		scrPaneContent.setViewportView(feedPresenter);
 		scrPaneTree.setViewportView(tree);
 		ctpMain.setLayout(glCtpMain);
 
@@ -208,6 +248,34 @@ public class View {
 			}
 		});
 
+		menuImport.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent event) {
+				delegate.importOpml(mainFrame);
+			}
+		});
+
+		menuExport.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent event) {
+				delegate.exportOpml(mainFrame);
+			}
+		});
+
+		menuSlowest.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent event) {
+				delegate.showSlowestFeeds();
+			}
+		});
+
+		txtSearch.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent event) {
+				delegate.searchEvent(txtSearch.getText(), newsPanel);
+			}
+		});
+
 		menuEdit.addActionListener(new ActionListener() {
 			@Override
 			public void actionPerformed(ActionEvent event) {
@@ -222,7 +290,16 @@ public class View {
 			}
 		});
 
-		feedPresenter.addHyperlinkListener(new HyperlinkListener() {
+		newsPanel.getNewsList().addListSelectionListener(new ListSelectionListener() {
+			@Override
+			public void valueChanged(ListSelectionEvent event) {
+				if (!event.getValueIsAdjusting()) {
+					delegate.newsSelected(newsPanel);
+				}
+			}
+		});
+
+		newsPanel.getDetailPane().addHyperlinkListener(new HyperlinkListener() {
 			@Override
 			public void hyperlinkUpdate(HyperlinkEvent event) {
 				if (event.getEventType() == HyperlinkEvent.EventType.ACTIVATED) {
@@ -240,7 +317,7 @@ public class View {
 		tree.addTreeSelectionListener(new TreeSelectionListener() {
 			@Override
 			public void valueChanged(TreeSelectionEvent event) {
-				delegate.elementInTreeFocused(tree, feedPresenter);
+				delegate.elementInTreeFocused(tree, newsPanel);
 			}
 		});
 